@@ -0,0 +1,13 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+
+#set the script to exit out on error
+set -e
+
+# compile the java program
+javac -d $DIR/../classes $DIR/../src/*.java
+
+#run named operations without prompts, one per line, printing one JSON result per line
+#usage: batch.sh <script file>, or batch.sh - to read the operations from stdin
+#(set -Dcafe.batch.commitEvery in JAVA_OPTS to tune)
+java $JAVA_OPTS -cp $DIR/../classes:$CLASSPATH Cafe mydb $PGPORT --script "$@"
@@ -0,0 +1,18 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+
+#set the script to exit out on error
+set -e
+
+# compile the java program
+javac -d $DIR/../classes $DIR/../src/*.java
+
+#time the data-access hot paths and write the results as JSON
+#usage: bench.sh <login> <password> <results.json> [benchmark...]
+#       bench.sh --compare <before.json> <after.json>
+#(set -Dcafe.bench.seconds / -Dcafe.bench.warmupSeconds in JAVA_OPTS to tune)
+if [ "$1" == "--compare" ]; then
+	java -cp $DIR/../classes:$CLASSPATH CafeBenchmark "$@"
+else
+	java $JAVA_OPTS -cp $DIR/../classes:$CLASSPATH CafeBenchmark mydb $PGPORT "$@"
+fi
@@ -0,0 +1,12 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+
+#set the script to exit out on error
+set -e
+
+# compile the java program
+javac -d $DIR/../classes $DIR/../src/*.java
+
+#time the 24 hour order board against growing order volumes
+#usage: benchmark_board.sh <employee or manager login> <password> [orders...]
+java -cp $DIR/../classes:$CLASSPATH OrderBoardBenchmark mydb $PGPORT "$@"
@@ -0,0 +1,14 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+
+#set the script to exit out on error
+set -e
+
+# compile the java program
+javac -d $DIR/../classes $DIR/../src/*.java
+
+#write <orders> synthetic orders (and users, item statuses) to <output dir>
+#in COPY format; load them with load_data.sh <output dir>
+#usage: generate_data.sh <output dir> <orders>
+#(set -Dcafe.gen.seed, -Dcafe.gen.days, ... in JAVA_OPTS to tune)
+java $JAVA_OPTS -cp $DIR/../classes:$CLASSPATH DataGenerator $DIR/../../data/menu.csv "$1" "$2"
@@ -0,0 +1,13 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+
+#set the script to exit out on error
+set -e
+
+# compile the java program
+javac -d $DIR/../classes $DIR/../src/*.java
+
+#stream the data files of project/data (or of the given folder) into the
+#database with COPY
+#(set -Dcafe.load.threads / -Dcafe.load.chunkRows in JAVA_OPTS to tune)
+java $JAVA_OPTS -cp $DIR/../classes:$CLASSPATH BulkLoader mydb $PGPORT "${1:-$DIR/../../data}"
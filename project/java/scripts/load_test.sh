@@ -0,0 +1,13 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+
+#set the script to exit out on error
+set -e
+
+# compile the java program
+javac -d $DIR/../classes $DIR/../src/*.java
+
+#run concurrent customer and employee sessions against the order flows
+#usage: load_test.sh <sessions> <employee login> <employee password>
+#(set -Dcafe.loadtest.seconds / -Dcafe.loadtest.thinkMillis / -Dcafe.pool.max in JAVA_OPTS to tune)
+java $JAVA_OPTS -cp $DIR/../classes:$CLASSPATH LoadTest mydb $PGPORT "$@"
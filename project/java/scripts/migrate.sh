@@ -0,0 +1,12 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+
+#set the script to exit out on error
+set -e
+
+# compile the java program
+javac -d $DIR/../classes $DIR/../src/*.java
+
+#apply pending schema migrations, or pass 'status' or 'check'
+#('check' fails if a hot query needs a full table scan)
+java -cp $DIR/../classes:$CLASSPATH MigrationRunner mydb $PGPORT $DIR/../../sql/migrations "$@"
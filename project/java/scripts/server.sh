@@ -0,0 +1,13 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+
+#set the script to exit out on error
+set -e
+
+# compile the java program
+javac -d $DIR/../classes $DIR/../src/*.java
+
+#serve the Cafe menus to many clients on 127.0.0.1
+#usage: server.sh <listen port>
+#(set -Dcafe.pool.max / -Dcafe.server.maxSessions / -Dcafe.server.idleTimeoutSeconds in JAVA_OPTS to tune)
+java $JAVA_OPTS -cp $DIR/../classes:$CLASSPATH CafeServer mydb $PGPORT "$@"
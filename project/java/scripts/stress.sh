@@ -0,0 +1,13 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+
+#set the script to exit out on error
+set -e
+
+# compile the java program
+javac -d $DIR/../classes $DIR/../src/*.java
+
+#stress a running server.sh with more and more concurrent clients
+#usage: stress.sh <listen port> <login pattern> <password pattern> [clients...]
+#(set -Dcafe.stress.seconds / -Dcafe.stress.thinkMillis / -Dcafe.stress.users in JAVA_OPTS to tune)
+java $JAVA_OPTS -cp $DIR/../classes ServerStressTest "$@"
@@ -0,0 +1,367 @@
+/*
+ * Bulk loader for the Cafe data files
+ * ===================================
+ *
+ * Loads the ';' separated files of project/data with COPY ... FROM STDIN,
+ * streaming them from the client, so the database needs no access to the
+ * files and no superuser rights. Tables are loaded in foreign key order.
+ * Each file is cut into chunks that are copied in parallel on separate
+ * pooled connections. The secondary indexes and foreign keys of a table
+ * are dropped before its load and rebuilt after it, and the Orders id
+ * sequence is moved past the largest loaded orderid and the order
+ * readiness counters are counted from the loaded item lines. The change
+ * notification triggers are disabled during the load; one notification
+ * per table tells running Cafe processes to drop their caches instead.
+ *
+ * Usage: java BulkLoader <dbname> <port> <data dir>
+ * Options (system properties):
+ *   cafe.load.threads    parallel COPY streams per table (default 4)
+ *   cafe.load.chunkRows  rows per COPY stream (default 50000)
+ */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+public class BulkLoader
+{
+	// tables, their data files and the columns the files hold, parents
+	// before children
+	private static final String[][] TABLES = {
+		{ "Menu", "menu.csv", "itemName, type, price, description, imageURL" },
+		{ "Users", "users.csv", "login, phoneNum, password, favItems, type" },
+		{ "Orders", "orders.csv", "orderid, login, paid, timeStampRecieved, total" },
+		{ "ItemStatus", "itemStatus.csv", "orderid, itemName, lastUpdated, status, comments" },
+	};
+
+	// the order readiness counters (migration 004) are kept by an ItemStatus
+	// trigger, which is disabled during the load
+	private static final String RECOUNT_ORDER_ITEMS = "DO $$ BEGIN "
+		+ "IF to_regprocedure('cafe_recount_order_items()') IS NOT NULL THEN CALL cafe_recount_order_items(); END IF; "
+		+ "END $$";
+
+	private final Cafe esql;
+	private final int threads;
+	private final int chunkRows;
+
+	public BulkLoader(Cafe esql, int threads, int chunkRows)
+	{
+		if (threads < 1 || chunkRows < 1)
+		{
+			throw new IllegalArgumentException("Invalid load options: threads " + threads + ", chunk rows " + chunkRows);
+		}
+		this.esql = esql;
+		this.threads = threads;
+		this.chunkRows = chunkRows;
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		if (args.length != 3)
+		{
+			System.err.println("Usage: java BulkLoader <dbname> <port> <data dir>");
+			System.exit(2);
+		}
+
+		Class.forName("org.postgresql.Driver");
+		int threads = Integer.getInteger("cafe.load.threads", 4);
+
+		// one connection per COPY stream, plus one for index rebuilds
+		System.setProperty("cafe.pool.max", String.valueOf(Math.max(Integer.getInteger("cafe.pool.max", 8), threads + 1)));
+		Cafe esql = new Cafe(args[0], args[1]);
+		try
+		{
+			BulkLoader loader = new BulkLoader(esql, threads, Integer.getInteger("cafe.load.chunkRows", 50000));
+			loader.loadAll(new File(args[2]));
+		}
+		finally
+		{
+			esql.cleanup();
+		}
+	}
+
+	/*
+	* Loads every table whose data file is in directory. Missing files are
+	* skipped.
+	* @param directory folder with the data files
+	* @throws java.sql.SQLException when a table failed to load
+	**/
+	public void loadAll(File directory) throws SQLException, IOException
+	{
+		long start = System.nanoTime();
+		long total = 0;
+
+		ExecutorService workers = Executors.newFixedThreadPool(threads);
+		try
+		{
+			for (String[] table : TABLES)
+			{
+				File file = new File(directory, table[1]);
+				if (!file.isFile())
+				{
+					System.out.println(table[0] + ": " + file + " not found, skipped");
+					continue;
+				}
+				total += load(workers, table[0], table[2], file);
+			}
+		}
+		finally
+		{
+			workers.shutdownNow();
+		}
+
+		esql.executeQuery(CafeQuery.RESET_ORDER_ID_SEQUENCE);
+		esql.executeUpdate(RECOUNT_ORDER_ITEMS);
+		report("Total", total, System.nanoTime() - start);
+	}
+
+	/*
+	* Loads one data file into table with its secondary indexes and foreign
+	* keys dropped, then rebuilds them and refreshes the table's statistics.
+	* A re-added foreign key is validated with one join over the table
+	* instead of one lookup per loaded row. The table's own triggers are
+	* disabled meanwhile, so no change notification is sent per row.
+	* Whatever was dropped or disabled is restored even when a later drop,
+	* the load or an earlier rebuild failed; the first failure is rethrown
+	* with the later ones attached. Running processes are notified only
+	* after a successful load.
+	* @return rows loaded
+	**/
+	private long load(ExecutorService workers, String table, String columns, File file) throws SQLException, IOException
+	{
+		List<List<String>> indexes = esql.executeQueryAndReturnResult(CafeQuery.SECONDARY_INDEXES, table);
+		List<List<String>> foreignKeys = esql.executeQueryAndReturnResult(CafeQuery.FOREIGN_KEYS, table);
+
+		// what has been taken off the table so far, which is all that is
+		// put back when a step fails
+		List<List<String>> droppedForeignKeys = new ArrayList<List<String>>();
+		List<List<String>> droppedIndexes = new ArrayList<List<String>>();
+		boolean triggersDisabled = false;
+
+		long rows = 0;
+		Exception failure = null;
+		try
+		{
+			for (List<String> foreignKey : foreignKeys)
+			{
+				esql.executeUpdate("ALTER TABLE " + table + " DROP CONSTRAINT \"" + foreignKey.get(0) + "\"");
+				droppedForeignKeys.add(foreignKey);
+			}
+			for (List<String> index : indexes)
+			{
+				esql.executeUpdate("DROP INDEX \"" + index.get(0) + "\"");
+				droppedIndexes.add(index);
+			}
+			esql.executeUpdate("ALTER TABLE " + table + " DISABLE TRIGGER USER");
+			triggersDisabled = true;
+
+			long start = System.nanoTime();
+			rows = copy(workers, table, columns, file);
+			report(table, rows, System.nanoTime() - start);
+		}
+		catch (SQLException | IOException e)
+		{
+			failure = e;
+		}
+
+		long rebuildStart = System.nanoTime();
+		for (List<String> index : droppedIndexes)
+		{
+			failure = restore(failure, index.get(1));
+		}
+		for (List<String> foreignKey : droppedForeignKeys)
+		{
+			failure = restore(failure, "ALTER TABLE " + table + " ADD CONSTRAINT \"" + foreignKey.get(0) + "\" " + foreignKey.get(1));
+		}
+		// the user triggers keep the order counters and send the change
+		// notifications, so they must never stay disabled
+		if (triggersDisabled)
+		{
+			failure = restore(failure, "ALTER TABLE " + table + " ENABLE TRIGGER USER");
+		}
+		if (failure instanceof IOException)
+		{
+			throw (IOException) failure;
+		}
+		if (failure != null)
+		{
+			throw (SQLException) failure;
+		}
+
+		esql.executeUpdate("NOTIFY " + NotificationListener.CHANNEL + ", '" + table.toLowerCase() + "'");
+		esql.executeUpdate("ANALYZE " + table);
+		System.out.printf("%s: rebuilt %d index(es) and %d foreign key(s) in %.2f s%n", table, indexes.size(), foreignKeys.size(),
+			(System.nanoTime() - rebuildStart) / 1e9);
+		return rows;
+	}
+
+	/*
+	* Runs one step of restoring a table after its load
+	* @param failure the first failure so far, null if none
+	* @return the first failure, with this step's attached if it failed too
+	**/
+	private Exception restore(Exception failure, String sql)
+	{
+		try
+		{
+			esql.executeUpdate(sql);
+			return failure;
+		}
+		catch (SQLException e)
+		{
+			if (failure == null)
+			{
+				return e;
+			}
+			failure.addSuppressed(e);
+			return failure;
+		}
+	}
+
+	/*
+	* Cuts file into chunks of chunkRows lines and copies them in parallel.
+	* At most two chunks per worker are held in memory at once.
+	* @return rows copied
+	**/
+	private long copy(ExecutorService workers, String table, String columns, File file) throws SQLException, IOException
+	{
+		final String sql = "COPY " + table + " (" + columns + ") FROM STDIN WITH (DELIMITER ';')";
+		final Semaphore inFlight = new Semaphore(threads * 2);
+		List<Future<Long>> chunks = new ArrayList<Future<Long>>();
+
+		Exception failure = null;
+		BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8);
+		try
+		{
+			StringBuilder chunk = new StringBuilder();
+			int lines = 0;
+			String line;
+			while ((line = reader.readLine()) != null)
+			{
+				chunk.append(line).append('\n');
+				if (++lines == chunkRows)
+				{
+					chunks.add(submit(workers, inFlight, sql, chunk.toString()));
+					chunk.setLength(0);
+					lines = 0;
+				}
+			}
+			if (lines > 0)
+			{
+				chunks.add(submit(workers, inFlight, sql, chunk.toString()));
+			}
+		}
+		catch (SQLException | IOException e)
+		{
+			failure = e;
+		}
+		finally
+		{
+			reader.close();
+		}
+
+		// wait for every chunk, so nothing is still copying when the
+		// indexes are rebuilt, and report the first failure
+		long rows = 0;
+		for (Future<Long> chunk : chunks)
+		{
+			try
+			{
+				rows += await(chunk);
+			}
+			catch (SQLException | IOException e)
+			{
+				if (failure == null)
+				{
+					failure = e;
+				}
+			}
+		}
+		if (failure != null)
+		{
+			// chunks are copied in their own transactions, so the ones
+			// that finished stay loaded
+			System.out.printf("%s: load failed, %d rows of completed chunks are committed%n", table, rows);
+		}
+		if (failure instanceof IOException)
+		{
+			throw (IOException) failure;
+		}
+		if (failure != null)
+		{
+			throw (SQLException) failure;
+		}
+		return rows;
+	}
+
+	private Future<Long> submit(ExecutorService workers, final Semaphore inFlight, final String sql, final String rows) throws SQLException
+	{
+		try
+		{
+			inFlight.acquire();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while loading");
+		}
+
+		return workers.submit(new Callable<Long>()
+		{
+			public Long call() throws SQLException, IOException
+			{
+				try
+				{
+					return esql.executeCopyIn(sql, new StringReader(rows));
+				}
+				finally
+				{
+					inFlight.release();
+				}
+			}
+		});
+	}
+
+	private static long await(Future<Long> chunk) throws SQLException, IOException
+	{
+		try
+		{
+			return chunk.get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while loading");
+		}
+		catch (ExecutionException e)
+		{
+			if (e.getCause() instanceof SQLException)
+			{
+				throw (SQLException) e.getCause();
+			}
+			if (e.getCause() instanceof IOException)
+			{
+				throw (IOException) e.getCause();
+			}
+			throw new SQLException(e.getCause());
+		}
+	}
+
+	private static void report(String table, long rows, long nanos)
+	{
+		double seconds = nanos / 1e9;
+		System.out.printf("%s: %d rows in %.2f s (%.0f rows/s)%n", table, rows, seconds, seconds > 0 ? rows / seconds : 0.0);
+	}
+}//end BulkLoader
@@ -15,20 +15,30 @@
 import java.sql.DriverManager;
 import java.sql.Connection;
 import java.sql.Statement;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.Savepoint;
 import java.io.File;
 import java.io.FileReader;
 import java.io.BufferedReader;
-import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.IOException;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.math.*;
 import java.text.DecimalFormat;
 
+import org.postgresql.PGConnection;
+
 /**
  * This class defines a simple embedded SQL utility class that is designed to
  * work with PostgreSQL JDBC drivers.
@@ -36,20 +46,83 @@ import java.text.DecimalFormat;
  */
 public class Cafe {
 
-	//login info for later use
-	private static String authorizedUser = null;
-	private static String userType = null;
+	//login info for later use is kept by the Session of the current
+	// thread (Session.current()), so one process can serve many sessions
    
-	// Decimal formatter
-	private static DecimalFormat priceFormat = new DecimalFormat("#0.00");
+	// Decimal formatter, one per thread as DecimalFormat is not thread safe
+	private static final ThreadLocal<DecimalFormat> priceFormat = new ThreadLocal<DecimalFormat>() {
+		protected DecimalFormat initialValue () {
+			return new DecimalFormat("#0.00");
+		}
+	};
+
+	// pool of physical database connections, each with its own cache of
+	// prepared statements. Sized by the cafe.pool.* system properties.
+	private ConnectionPool _pool = null;
+
+	// connection of the transaction the current thread is running, if any
+	private final ThreadLocal<PooledConnection> _transaction = new ThreadLocal<PooledConnection>();
+
+	// cache updates waiting for the current thread's transaction to commit
+	private final ThreadLocal<List<Runnable>> _afterCommit = new ThreadLocal<List<Runnable>>();
+
+	// copy-on-write cache of the Menu table, null until first read. Writes
+	// through the menu helpers swap in a changed copy.
+	private final AtomicReference<MenuSnapshot> _menu = new AtomicReference<MenuSnapshot>();
+
+	// counts menu changes, so a load or a patch that raced a change is not
+	// cached
+	private final AtomicLong _menuChanges = new AtomicLong();
+
+	// set while the current thread's transaction has uncommitted menu changes
+	private final ThreadLocal<Boolean> _menuChangedInTransaction = new ThreadLocal<Boolean>();
+
+	// in progress order items, oldest order first, loaded when first shown
+	private final KitchenQueue _kitchen = new KitchenQueue ();
+
+	// profiles of the users logged in through this Cafe, marked stale when
+	// their Users row changes
+	private final Set<UserProfile> _profiles = ConcurrentHashMap.newKeySet ();
+
+	// receives the changes other processes commit, so the caches above can
+	// be dropped when they go stale. Off with -Dcafe.notify.listen=false.
+	private NotificationListener _listener = null;
+
+	// rows fetched per round trip by streamed queries
+	public static final int STREAM_FETCH_SIZE = 1000;
 
-	// reference to physical database connection.
-	private Connection _connection = null;
+	// keyset cursor that starts an order listing at the newest order
+	public static final int FIRST_PAGE = Integer.MAX_VALUE;
 
-	// handling the keyboard inputs through a BufferedReader
-	// This variable can be global for convenience.
-	static BufferedReader in = new BufferedReader(
-		new InputStreamReader(System.in));
+	// orders per page of a customer's order history
+	private static final int ORDER_HISTORY_PAGE_SIZE = 5;
+
+	// orders per page of the employee 24 hour order board
+	private static final int ORDER_BOARD_PAGE_SIZE = 20;
+
+	// items shown by the kitchen queue
+	private static final int KITCHEN_QUEUE_SIZE = 20;
+
+	// maps the first column of a row to an Integer
+	private static final RowMapper<Integer> INTEGER_MAPPER = new RowMapper<Integer>() {
+		public Integer mapRow (ResultSet rs) throws SQLException {
+			return rs.getInt (1);
+		}
+	};
+
+	// maps the first column of a row to a Boolean
+	private static final RowMapper<Boolean> BOOLEAN_MAPPER = new RowMapper<Boolean>() {
+		public Boolean mapRow (ResultSet rs) throws SQLException {
+			return rs.getBoolean (1);
+		}
+	};
+
+	// maps the first column of a row to a Double
+	private static final RowMapper<Double> DOUBLE_MAPPER = new RowMapper<Double>() {
+		public Double mapRow (ResultSet rs) throws SQLException {
+			return rs.getDouble (1);
+		}
+	};
 
 	/**
 	* Creates a new instance of Cafe
@@ -63,11 +136,34 @@ public class Cafe {
 	System.out.print("Connecting to database...");
 		try{
 			// constructs the connection URL
-			String url = "jdbc:postgresql://127.0.0.1:" + dbport + "/" + dbname;
+			// prepareThreshold=1 makes the driver use server-side prepared
+			// statements from the first execution of a cached statement
+			String url = "jdbc:postgresql://127.0.0.1:" + dbport + "/" + dbname + "?prepareThreshold=1";
 			System.out.println ("Connection URL: " + url + "\n");
 
-			// obtain a physical connection
-			this._connection = DriverManager.getConnection(url);
+			// open the pool of physical connections
+			this._pool = new ConnectionPool(url,
+				Integer.getInteger("cafe.pool.min", 1),
+				Integer.getInteger("cafe.pool.max", 8),
+				Long.getLong("cafe.pool.idleTimeoutMillis", 60000L),
+				Long.getLong("cafe.pool.borrowTimeoutMillis", 30000L));
+
+			if (Boolean.parseBoolean (System.getProperty ("cafe.notify.listen", "true"))) {
+				this._listener = new NotificationListener (url, this._pool);
+				this._listener.addListener (new TableChangeListener () {
+					public void tableChanged (String table, String key) {
+						if (table == null || table.equals ("menu"))
+							menuItemChangedElsewhere (key);
+						if (table == null || table.equals ("users"))
+							for (UserProfile profile : _profiles)
+								if (key == null || profile.isFor (key))
+									profile.markStale ();
+						if (table == null || table.equals ("itemstatus"))
+							itemStatusesChangedElsewhere (key);
+					}
+				});
+				this._listener.start ();
+			}
 			System.out.println("Done");
 		}catch (Exception e){
 			System.err.println("Error - Unable to Connect to Database: " + e.getMessage() );
@@ -84,14 +180,19 @@ public class Cafe {
 	* @throws java.sql.SQLException when update failed
 	*/
 	public void executeUpdate (String sql) throws SQLException {
-		// creates a statement object
-		Statement stmt = this._connection.createStatement ();
+		PooledConnection conn = borrowConnection ();
+		try {
+			// creates a statement object
+			Statement stmt = conn.getConnection ().createStatement ();
 
-		// issues the update instruction
-		stmt.executeUpdate (sql);
+			// issues the update instruction
+			stmt.executeUpdate (sql);
 
-		// close the instruction
-		stmt.close ();
+			// close the instruction
+			stmt.close ();
+		} finally {
+			releaseConnection (conn);
+		}
 	}//end executeUpdate
 
 	/**
@@ -104,37 +205,42 @@ public class Cafe {
 	* @throws java.sql.SQLException when failed to execute the query
 	*/
 	public int executeQueryAndPrintResult (String query) throws SQLException {
-		// creates a statement object
-		Statement stmt = this._connection.createStatement ();
-
-		// issues the query instruction
-		ResultSet rs = stmt.executeQuery (query);
-
-		/*
-		** obtains the metadata object for the returned result set.  The metadata
-		** contains row and column info.
-		*/
-		ResultSetMetaData rsmd = rs.getMetaData ();
-		int numCol = rsmd.getColumnCount ();
-		int rowCount = 0;
-
-		// iterates through the result set and output them to standard out.
-		boolean outputHeader = true;
-		while (rs.next()){
-			if(outputHeader){
-				for(int i = 1; i <= numCol; i++){
-					System.out.print(rsmd.getColumnName(i) + "\t");
+		PooledConnection conn = borrowConnection ();
+		try {
+			// creates a statement object
+			Statement stmt = conn.getConnection ().createStatement ();
+
+			// issues the query instruction
+			ResultSet rs = stmt.executeQuery (query);
+
+			/*
+			** obtains the metadata object for the returned result set.  The metadata
+			** contains row and column info.
+			*/
+			ResultSetMetaData rsmd = rs.getMetaData ();
+			int numCol = rsmd.getColumnCount ();
+			int rowCount = 0;
+
+			// iterates through the result set and output them to standard out.
+			boolean outputHeader = true;
+			while (rs.next()){
+				if(outputHeader){
+					for(int i = 1; i <= numCol; i++){
+						System.out.print(rsmd.getColumnName(i) + "\t");
+					}
+					System.out.println();
+					outputHeader = false;
 				}
-				System.out.println();
-				outputHeader = false;
-			}
-			for (int i=1; i<=numCol; ++i)
-				System.out.print (rs.getString (i) + "\t");
-			System.out.println ();
-			++rowCount;
-		}//end while
-		stmt.close ();
-		return rowCount;
+				for (int i=1; i<=numCol; ++i)
+					System.out.print (rs.getString (i) + "\t");
+				System.out.println ();
+				++rowCount;
+			}//end while
+			stmt.close ();
+			return rowCount;
+		} finally {
+			releaseConnection (conn);
+		}
 	}//end executeQuery
 
 	/**
@@ -147,31 +253,36 @@ public class Cafe {
 	* @throws java.sql.SQLException when failed to execute the query
 	*/
 	public List<List<String>> executeQueryAndReturnResult (String query) throws SQLException { 
-		// creates a statement object 
-		Statement stmt = this._connection.createStatement (); 
+		PooledConnection conn = borrowConnection ();
+		try {
+			// creates a statement object 
+			Statement stmt = conn.getConnection ().createStatement (); 
  
-		// issues the query instruction 
-		ResultSet rs = stmt.executeQuery (query); 
+			// issues the query instruction 
+			ResultSet rs = stmt.executeQuery (query); 
  
-		/* 
-		** obtains the metadata object for the returned result set.  The metadata 
-		** contains row and column info. 
-		*/ 
-		ResultSetMetaData rsmd = rs.getMetaData (); 
-		int numCol = rsmd.getColumnCount (); 
-		int rowCount = 0; 
+			/* 
+			** obtains the metadata object for the returned result set.  The metadata 
+			** contains row and column info. 
+			*/ 
+			ResultSetMetaData rsmd = rs.getMetaData (); 
+			int numCol = rsmd.getColumnCount (); 
+			int rowCount = 0; 
  
-		// iterates through the result set and saves the data returned by the query. 
-		boolean outputHeader = false;
-		List<List<String>> result  = new ArrayList<List<String>>(); 
-		while (rs.next()){
-			List<String> record = new ArrayList<String>(); 
-			for (int i=1; i<=numCol; ++i) 
-				record.add(rs.getString (i)); 
-			result.add(record); 
-		}//end while 
-		stmt.close (); 
-		return result; 
+			// iterates through the result set and saves the data returned by the query. 
+			boolean outputHeader = false;
+			List<List<String>> result  = new ArrayList<List<String>>(); 
+			while (rs.next()){
+				List<String> record = new ArrayList<String>(); 
+				for (int i=1; i<=numCol; ++i) 
+					record.add(rs.getString (i)); 
+				result.add(record); 
+			}//end while 
+			stmt.close (); 
+			return result;
+		} finally {
+			releaseConnection (conn);
+		}
 	}//end executeQueryAndReturnResult
 
 	/**
@@ -183,52 +294,678 @@ public class Cafe {
 	* @throws java.sql.SQLException when failed to execute the query
 	*/
 	public int executeQuery (String query) throws SQLException {
-		// creates a statement object
-		Statement stmt = this._connection.createStatement ();
+		PooledConnection conn = borrowConnection ();
+		try {
+			// creates a statement object
+			Statement stmt = conn.getConnection ().createStatement ();
 
-		// issues the query instruction
-		ResultSet rs = stmt.executeQuery (query);
+			// issues the query instruction
+			ResultSet rs = stmt.executeQuery (query);
 
-		int rowCount = 0;
+			int rowCount = 0;
 
-		// iterates through the result set and count nuber of results.
-		if(rs.next()){
-			rowCount++;
-		}//end while
-		stmt.close ();
-		return rowCount;
+			// iterates through the result set and count nuber of results.
+			if(rs.next()){
+				rowCount++;
+			}//end while
+			stmt.close ();
+			return rowCount;
+		} finally {
+			releaseConnection (conn);
+		}
 	}
 
+	/**
+	* Method to execute a named update SQL statement with parameters. The
+	* statement is prepared once per connection and reused afterwards.
+	*
+	* @param query the named statement
+	* @param params the values bound to the statement's placeholders, in order
+	* @return the number of rows affected
+	* @throws java.sql.SQLException when update failed
+	*/
+	public int executeUpdate (CafeQuery query, Object... params) throws SQLException {
+		PooledConnection conn = borrowConnection ();
+		try {
+			PreparedStatement stmt = conn.getStatements ().prepare (query);
+			bindParameters (stmt, params);
+
+			return stmt.executeUpdate ();
+		} finally {
+			releaseConnection (conn);
+		}
+	}//end executeUpdate
+
+	/**
+	* Method to execute a named query with parameters and return the results
+	* as a list of records. Each record in turn is a list of attribute values
+	*
+	* @param query the named query
+	* @param params the values bound to the query's placeholders, in order
+	* @return the query result as a list of records
+	* @throws java.sql.SQLException when failed to execute the query
+	*/
+	public List<List<String>> executeQueryAndReturnResult (CafeQuery query, Object... params) throws SQLException {
+		PooledConnection conn = borrowConnection ();
+		try {
+			PreparedStatement stmt = conn.getStatements ().prepare (query);
+			bindParameters (stmt, params);
+
+			ResultSet rs = stmt.executeQuery ();
+			try {
+				int numCol = rs.getMetaData ().getColumnCount ();
+
+				List<List<String>> result  = new ArrayList<List<String>>();
+				while (rs.next()){
+					List<String> record = new ArrayList<String>(numCol);
+					for (int i=1; i<=numCol; ++i)
+						record.add(rs.getString (i));
+					result.add(record);
+				}//end while
+				return result;
+			} finally {
+				rs.close ();
+			}
+		} finally {
+			releaseConnection (conn);
+		}
+	}//end executeQueryAndReturnResult
+
+	/**
+	* Method to execute a named query with parameters and return whether
+	* it found at least one row
+	*
+	* @param query the named query
+	* @param params the values bound to the query's placeholders, in order
+	* @return 1 if the query returned a row, 0 otherwise
+	* @throws java.sql.SQLException when failed to execute the query
+	*/
+	public int executeQuery (CafeQuery query, Object... params) throws SQLException {
+		PooledConnection conn = borrowConnection ();
+		try {
+			PreparedStatement stmt = conn.getStatements ().prepare (query);
+			bindParameters (stmt, params);
+
+			ResultSet rs = stmt.executeQuery ();
+			try {
+				return rs.next() ? 1 : 0;
+			} finally {
+				rs.close ();
+			}
+		} finally {
+			releaseConnection (conn);
+		}
+	}//end executeQuery
+
+	/**
+	* Method to execute a named query with parameters and map each row to
+	* an object with mapper
+	*
+	* @param query the named query
+	* @param mapper turns each row into an object
+	* @param params the values bound to the query's placeholders, in order
+	* @return the mapped rows, in query order
+	* @throws java.sql.SQLException when failed to execute the query
+	*/
+	public <T> List<T> executeQueryAndMapResult (CafeQuery query, RowMapper<T> mapper, Object... params) throws SQLException {
+		PooledConnection conn = borrowConnection ();
+		try {
+			PreparedStatement stmt = conn.getStatements ().prepare (query);
+			bindParameters (stmt, params);
+
+			ResultSet rs = stmt.executeQuery ();
+			try {
+				List<T> result = new ArrayList<T>();
+				while (rs.next ()){
+					result.add (mapper.mapRow (rs));
+				}//end while
+				return result;
+			} finally {
+				rs.close ();
+			}
+		} finally {
+			releaseConnection (conn);
+		}
+	}//end executeQueryAndMapResult
+
+	/**
+	* Method to execute a named query with parameters and map its first row
+	*
+	* @param query the named query
+	* @param mapper turns the row into an object
+	* @param params the values bound to the query's placeholders, in order
+	* @return the mapped first row, null if the query returned no rows
+	* @throws java.sql.SQLException when failed to execute the query
+	*/
+	public <T> T executeQueryForObject (CafeQuery query, RowMapper<T> mapper, Object... params) throws SQLException {
+		PooledConnection conn = borrowConnection ();
+		try {
+			PreparedStatement stmt = conn.getStatements ().prepare (query);
+			bindParameters (stmt, params);
+
+			ResultSet rs = stmt.executeQuery ();
+			try {
+				return rs.next () ? mapper.mapRow (rs) : null;
+			} finally {
+				rs.close ();
+			}
+		} finally {
+			releaseConnection (conn);
+		}
+	}//end executeQueryForObject
+
+	/**
+	* Method to execute a named query whose first column is an integer
+	* (i.e. an id) and collect that column into an IntList. The rows are
+	* streamed, so no per-row record is built.
+	*
+	* @param query the named query
+	* @param params the values bound to the query's placeholders, in order
+	* @return the first column of every row, in query order
+	* @throws java.sql.SQLException when failed to execute the query
+	*/
+	public IntList executeQueryForIntList (CafeQuery query, Object... params) throws SQLException {
+		final IntList result = new IntList ();
+		executeQueryAndStreamResult (query, STREAM_FETCH_SIZE, new RowHandler () {
+			public void handleRow (ResultSet rs) throws SQLException {
+				result.add (rs.getInt (1));
+			}
+		}, params);
+		return result;
+	}//end executeQueryForIntList
+
+	/**
+	* Method to execute a named query with parameters and pass its rows to
+	* handler one at a time. The query runs with autocommit off and the
+	* given fetch size, so Postgres returns the rows through a server-side
+	* cursor in batches instead of all at once, and memory use does not
+	* grow with the size of the result.
+	*
+	* @param query the named query
+	* @param fetchSize the number of rows fetched per round trip
+	* @param handler receives each row
+	* @param params the values bound to the query's placeholders, in order
+	* @return the number of rows handled
+	* @throws java.sql.SQLException when failed to execute the query
+	*/
+	public int executeQueryAndStreamResult (CafeQuery query, int fetchSize, RowHandler handler, Object... params) throws SQLException {
+		PooledConnection conn = borrowConnection ();
+		try {
+			// a cursor only stays open inside a transaction
+			boolean ownTransaction = conn.getConnection ().getAutoCommit ();
+			if (ownTransaction)
+				conn.getConnection ().setAutoCommit (false);
+
+			PreparedStatement stmt = conn.getStatements ().prepare (query);
+			stmt.setFetchSize (fetchSize);
+			bindParameters (stmt, params);
+
+			int rowCount = 0;
+			ResultSet rs = stmt.executeQuery ();
+			try {
+				while (rs.next ()){
+					handler.handleRow (rs);
+					++rowCount;
+				}//end while
+			} finally {
+				rs.close ();
+			}
+			if (ownTransaction)
+				conn.getConnection ().commit ();
+			return rowCount;
+		} finally {
+			// release rolls back and restores autocommit if the query failed
+			releaseConnection (conn);
+		}
+	}//end executeQueryAndStreamResult
+
+	/**
+	* Method to show the plan Postgres picks for a named query with the
+	* given parameters. The statement is not cached; inside
+	* executeInTransaction it sees the transaction's planner settings.
+	*
+	* @param analyze true to run the query and report actual row counts
+	* @param query the named query
+	* @param params the values bound to the query's placeholders, in order
+	* @return the lines of the EXPLAIN output
+	* @throws java.sql.SQLException when failed to explain the query
+	*/
+	public List<String> explainQuery (boolean analyze, CafeQuery query, Object... params) throws SQLException {
+		PooledConnection conn = borrowConnection ();
+		try {
+			String explain = analyze ? "EXPLAIN ANALYZE " : "EXPLAIN ";
+			PreparedStatement stmt = conn.getConnection ().prepareStatement (explain + query.getSql ());
+			try {
+				bindParameters (stmt, params);
+
+				List<String> plan = new ArrayList<String> ();
+				ResultSet rs = stmt.executeQuery ();
+				while (rs.next ()){
+					plan.add (rs.getString (1));
+				}//end while
+				return plan;
+			} finally {
+				stmt.close ();
+			}
+		} finally {
+			releaseConnection (conn);
+		}
+	}//end explainQuery
+
+	/**
+	* Method to stream rows to a COPY ... FROM STDIN statement. The rows
+	* are read from reader on the client, so no server-side file access
+	* is needed.
+	*
+	* @param sql the COPY statement
+	* @param reader the rows, in the format the COPY statement expects
+	* @return the number of rows copied
+	* @throws java.sql.SQLException when the copy failed
+	* @throws java.io.IOException when failed to read the rows
+	*/
+	public long executeCopyIn (String sql, Reader reader) throws SQLException, IOException {
+		PooledConnection conn = borrowConnection ();
+		try {
+			return conn.getConnection ().unwrap (PGConnection.class).getCopyAPI ().copyIn (sql, reader);
+		} finally {
+			releaseConnection (conn);
+		}
+	}//end executeCopyIn
+
+	/**
+	* Method to run several statements as one transaction. Every execute*
+	* call made by work on this thread uses the same connection; the
+	* transaction commits when work returns and rolls back if it throws.
+	*
+	* @param work the statements to run
+	* @return the result of work
+	* @throws java.sql.SQLException when a statement failed or work rolled back
+	*/
+	public <T> T executeInTransaction (Transaction<T> work) throws SQLException {
+		if (this._transaction.get () != null)
+			return work.run ();
+
+		PooledConnection conn = this._pool.borrow ();
+		T result;
+		List<Runnable> committed;
+		try {
+			conn.getConnection ().setAutoCommit (false);
+			this._transaction.set (conn);
+
+			result = work.run ();
+			conn.getConnection ().commit ();
+			committed = this._afterCommit.get ();
+		} finally {
+			this._transaction.remove ();
+			this._afterCommit.remove ();
+			// release rolls back and restores autocommit if work failed
+			this._pool.release (conn);
+
+			// committed or not, the cached menu may no longer match the table
+			if (this._menuChangedInTransaction.get () != null) {
+				this._menuChangedInTransaction.remove ();
+				invalidateMenu ();
+			}
+		}
+
+		if (committed != null)
+			for (Runnable action : committed)
+				action.run ();
+		return result;
+	}//end executeInTransaction
+
+	/**
+	* Method to update a cache once the current thread's transaction
+	* commits; outside a transaction the update runs at once. Updates of a
+	* transaction that rolls back are dropped.
+	*
+	* @param action the cache update
+	*/
+	public void afterCommit (Runnable action) {
+		if (this._transaction.get () == null) {
+			action.run ();
+			return;
+		}
+		List<Runnable> actions = this._afterCommit.get ();
+		if (actions == null) {
+			actions = new ArrayList<Runnable> ();
+			this._afterCommit.set (actions);
+		}
+		actions.add (action);
+	}//end afterCommit
+
+	/**
+	* Gets the menu, from the cache when it is loaded. Inside a transaction
+	* that changed the menu the table is read again, so the transaction
+	* sees its own changes.
+	*
+	* @return snapshot of the Menu table
+	* @throws java.sql.SQLException when failed to read the menu
+	*/
+	public MenuSnapshot getMenu () throws SQLException {
+		if (this._menuChangedInTransaction.get () != null)
+			return MenuSnapshot.load (this);
+
+		MenuSnapshot menu = this._menu.get ();
+		if (menu != null)
+			return menu;
+
+		long changes = this._menuChanges.get ();
+		menu = MenuSnapshot.load (this);
+		// a change made while loading may be missing from menu; cache it
+		// only if there was none
+		if (this._menuChanges.get () == changes)
+			this._menu.compareAndSet (null, menu);
+		return menu;
+	}//end getMenu
+
+	/**
+	* Gets the count of menu changes, taken by a writer before its write
+	* and passed to menuItemChanged after it
+	*/
+	public long menuChanges () {
+		return this._menuChanges.get ();
+	}//end menuChanges
+
+	/**
+	* Updates the cached menu after a write to one Menu row. Writers return
+	* in no particular order relative to their commits, so when another
+	* change was made since this write started, the older row could win;
+	* the cache is dropped instead of patched. Inside a transaction the
+	* cache is dropped when the transaction ends, as the write may still
+	* roll back.
+	*
+	* @param changes menuChanges () taken before the write
+	* @param itemName the item written
+	* @param item the row as written, null if it was deleted
+	*/
+	public void menuItemChanged (long changes, String itemName, MenuItem item) {
+		boolean raced = this._menuChanges.incrementAndGet () != changes + 1;
+		if (this._transaction.get () != null) {
+			this._menuChangedInTransaction.set (Boolean.TRUE);
+			return;
+		}
+		if (raced) {
+			this._menu.set (null);
+			return;
+		}
+
+		while (true) {
+			MenuSnapshot menu = this._menu.get ();
+			if (menu == null)
+				return;
+			MenuSnapshot changed = item != null ? menu.with (item) : menu.without (itemName);
+			if (this._menu.compareAndSet (menu, changed))
+				return;
+		}
+	}//end menuItemChanged
+
+	/**
+	* Brings the cached menu up to date with a change another process
+	* committed to one Menu row, by reading that row again
+	*
+	* @param itemName the item changed, null if any may have changed
+	*/
+	private void menuItemChangedElsewhere (String itemName) {
+		if (itemName == null || this._menu.get () == null) {
+			invalidateMenu ();
+			return;
+		}
+		try {
+			long changes = menuChanges ();
+			MenuItem item = executeQueryForObject (CafeQuery.MENU_ITEM, MenuItem.MAPPER, itemName);
+			menuItemChanged (changes, itemName, item);
+		} catch (Exception e) {
+			// the cached row can no longer be trusted
+			invalidateMenu ();
+		}
+	}//end menuItemChangedElsewhere
+
+	/**
+	* Tracks the profile of a logged in user, so it is marked stale when
+	* another session or process changes the user's row
+	*/
+	public void addProfile (UserProfile profile) {
+		this._profiles.add (profile);
+	}//end addProfile
+
+	public void removeProfile (UserProfile profile) {
+		this._profiles.remove (profile);
+	}//end removeProfile
+
+	/**
+	* Marks the profiles of login held by other sessions of this process
+	* stale after a write to the user's row, once the write has committed.
+	* The writing session updates its own profile itself.
+	*
+	* @param login the user written
+	*/
+	public void userChanged (final String login) {
+		final UserProfile own = Session.current ().getProfile ();
+		afterCommit (new Runnable () {
+			public void run () {
+				for (UserProfile profile : _profiles)
+					if (profile != own && profile.isFor (login))
+						profile.markStale ();
+			}
+		});
+	}//end userChanged
+
+	/**
+	* Registers a listener for the table changes committed by other
+	* processes.
+	* Does nothing when change notifications are turned off.
+	*
+	* @param listener called on the notification thread
+	*/
+	public void addTableChangeListener (TableChangeListener listener) {
+		if (this._listener != null)
+			this._listener.addListener (listener);
+	}//end addTableChangeListener
+
+	/**
+	* Gets the queue of in progress order items, loading it on first use
+	*
+	* @return the kitchen queue
+	* @throws java.sql.SQLException when failed to load it
+	*/
+	public KitchenQueue getKitchenQueue () throws SQLException {
+		if (!this._kitchen.isLoaded ())
+			this._kitchen.load (this);
+		return this._kitchen;
+	}//end getKitchenQueue
+
+	/**
+	* Updates the kitchen queue after a write to one ItemStatus row, once
+	* the write has committed
+	*
+	* @param orderId the order written
+	* @param itemName the item written
+	* @param ticket the line as written if it is in progress, null if it
+	*        is ready or was deleted
+	*/
+	public void itemStatusChanged (final int orderId, final String itemName, final KitchenTicket ticket) {
+		afterCommit (new Runnable () {
+			public void run () {
+				_kitchen.changed (orderId, itemName, ticket);
+			}
+		});
+	}//end itemStatusChanged
+
+	/**
+	* Updates the kitchen queue after all ItemStatus rows of an order were
+	* deleted, once the delete has committed
+	*/
+	public void orderItemStatusesDeleted (final int orderId) {
+		afterCommit (new Runnable () {
+			public void run () {
+				_kitchen.orderDeleted (orderId);
+			}
+		});
+	}//end orderItemStatusesDeleted
+
+	/**
+	* Updates the kitchen queue after the ItemStatus rows of a menu item
+	* were deleted from every order, once the delete has committed
+	*/
+	public void menuItemStatusesDeleted (final String itemName) {
+		afterCommit (new Runnable () {
+			public void run () {
+				_kitchen.itemDeleted (itemName);
+			}
+		});
+	}//end menuItemStatusesDeleted
+
+	/**
+	* Brings the kitchen queue up to date with a change another process
+	* committed to ItemStatus
+	*
+	* @param orderId the order changed, null if any may have changed
+	*/
+	private void itemStatusesChangedElsewhere (String orderId) {
+		if (orderId == null) {
+			this._kitchen.invalidate ();
+			return;
+		}
+		try {
+			this._kitchen.reloadOrder (this, Integer.parseInt (orderId));
+		} catch (Exception e) {
+			// the queue can no longer be trusted
+			this._kitchen.invalidate ();
+		}
+	}//end itemStatusesChangedElsewhere
+
+	/**
+	* Drops the cached menu; the next read loads it again. Used when the
+	* changed rows are not known one by one (i.e. a transaction's
+	* changes, a bulk load).
+	*/
+	public void invalidateMenu () {
+		this._menuChanges.incrementAndGet ();
+		this._menu.set (null);
+	}//end invalidateMenu
+
+	/**
+	* Gets the connection of the current thread's transaction, or borrows
+	* one from the pool
+	*/
+	private PooledConnection borrowConnection () throws SQLException {
+		PooledConnection conn = this._transaction.get ();
+		return conn != null ? conn : this._pool.borrow ();
+	}//end borrowConnection
+
+	/**
+	* Gives a connection back to the pool unless it belongs to the current
+	* thread's transaction
+	*/
+	private void releaseConnection (PooledConnection conn) {
+		if (conn != this._transaction.get ())
+			this._pool.release (conn);
+	}//end releaseConnection
+
+	/**
+	* Binds params to the placeholders of stmt, in order. String[] values
+	* are bound as text[] arrays.
+	*
+	* @param stmt the prepared statement
+	* @param params the values to bind
+	* @throws java.sql.SQLException when a value could not be bound
+	*/
+	private static void bindParameters (PreparedStatement stmt, Object... params) throws SQLException {
+		for (int i = 0; i < params.length; ++i) {
+			if (params[i] instanceof String[])
+				stmt.setArray (i + 1, stmt.getConnection ().createArrayOf ("text", (String[]) params[i]));
+			else
+				stmt.setObject (i + 1, params[i]);
+		}
+	}//end bindParameters
+
+	/**
+	* Prints how many statements were prepared on the pooled connections,
+	* how many executions reused an already prepared statement, and the
+	* pool's size and borrow latency
+	*/
+	public void printStatementStatistics () {
+		if (this._pool == null)
+			return;
+
+		System.out.println ("Statements prepared: " + this._pool.getParsedCount ()
+			+ ", reused: " + this._pool.getReusedCount ()
+			+ ", server-side prepared: " + this._pool.getServerPreparedCount ());
+		this._pool.printStatistics ();
+	}//end printStatementStatistics
+
 	/**
 	* Method to fetch the last value from sequence. This
 	* method issues the query to the DBMS and returns the current 
 	* value of sequence used for autogenerated keys
 	*
+	* currval is per database session, so it only gives the value this
+	* program generated when it runs on the same connection as the
+	* INSERT. The method must therefore be called from inside
+	* executeInTransaction, after the INSERT. Prefer a RETURNING clause,
+	* which hands back the key with the INSERT itself.
+	*
 	* @param sequence name of the DB sequence
 	* @return current value of a sequence
-	* @throws java.sql.SQLException when failed to execute the query
+	* @throws java.sql.SQLException when failed to execute the query or
+	*         when called outside a transaction
 	*/
 	public int getCurrSeqVal(String sequence) throws SQLException {
-		Statement stmt = this._connection.createStatement ();
-	
-		ResultSet rs = stmt.executeQuery (String.format("Select currval('%s')", sequence));
-		if (rs.next())
-			return rs.getInt(1);
-		return -1;
+		if (this._transaction.get () == null)
+			throw new SQLException ("getCurrSeqVal must be called inside executeInTransaction");
+
+		Integer result = executeQueryForObject (CafeQuery.SEQUENCE_CURRVAL, INTEGER_MAPPER, sequence);
+		return result != null ? result : -1;
 	}
 
 	/**
-	* Method to close the physical connection if it is open.
+	* Method to run part of a transaction that can fail on its own. When
+	* work throws, its statements are rolled back to a savepoint taken
+	* before it, and the rest of the transaction can go on and commit.
+	* Must be called from inside executeInTransaction.
+	*
+	* @param work the statements to run
+	* @return the result of work
+	* @throws java.sql.SQLException when work failed or when called
+	*         outside a transaction
 	*/
-	public void cleanup(){
-		try{
-			if (this._connection != null){
-				this._connection.close ();
-			}//end if
+	public <T> T executeInSavepoint (Transaction<T> work) throws SQLException {
+		PooledConnection conn = this._transaction.get ();
+		if (conn == null)
+			throw new SQLException ("executeInSavepoint must be called inside executeInTransaction");
+
+		Savepoint savepoint = conn.getConnection ().setSavepoint ();
+		List<Runnable> actions = this._afterCommit.get ();
+		int pending = actions != null ? actions.size () : 0;
+		boolean done = false;
+		try {
+			T result = work.run ();
+			done = true;
+			return result;
+		} finally {
+			if (done) {
+				conn.getConnection ().releaseSavepoint (savepoint);
+			} else {
+				conn.getConnection ().rollback (savepoint);
+				// drop the cache updates of the rolled back statements
+				actions = this._afterCommit.get ();
+				if (actions != null)
+					actions.subList (pending, actions.size ()).clear ();
+			}
 		}
-		catch (SQLException e){
-		// ignored.
-		}//end try
+	}//end executeInSavepoint
+
+	/**
+	* Method to close the physical connections if they are open.
+	*/
+	public void cleanup(){
+		if (this._listener != null){
+			this._listener.close ();
+		}//end if
+		if (this._pool != null){
+			this._pool.close ();
+		}//end if
 	}//end cleanup
 
    	/**
@@ -237,12 +974,22 @@ public class Cafe {
 	* @param args the command line arguments this inclues the <mysql|pgsql> <login file>
 	*/
 	public static void main (String[] args) {
+		if (args.length == 4 && args[2].equals ("--script")) {
+			// batch mode: named operations instead of menus, see CafeBatch
+			try {
+				CafeBatch.main (new String[] { args[0], args[1], args[3] });
+			}catch(Exception e) {
+				System.err.println (e.getMessage ());
+				System.exit (1);
+			}//end try
+			return;
+		}//end if
 		if (args.length != 2) {
 			System.err.println (
 			"Usage: " +
 			"java [-classpath <classpath>] " +
 			Cafe.class.getName () +
-			" <dbname> <port>");
+			" <dbname> <port> [--script <file|->]");
 		return;
 	}//end if
 
@@ -257,6 +1004,29 @@ public class Cafe {
 		String dbport = args[1];
 		esql = new Cafe (dbname, dbport);
 
+		RunMenus(esql);
+		}catch(Exception e) {
+			System.err.println (e.getMessage ());
+		}finally{
+		// make sure to cleanup the created table and close the connection.
+		try{
+			if(esql != null) {
+				esql.printStatementStatistics ();
+				System.out.print("Disconnecting from database...");
+				esql.cleanup ();
+				System.out.println("Done\n\nBye !");
+			}//end if
+		}catch (Exception e) {
+			// ignored.
+		}//end try
+		}//end try
+	}//end main
+
+	/*
+	* Runs the main menu of the current session until the user exits:
+	* create user, log in, then the menu of the user's type
+	**/
+	public static void RunMenus(Cafe esql) {
 		boolean keepon = true;
 		while(keepon) {
 			// These are sample SQL statements
@@ -265,20 +1035,22 @@ public class Cafe {
 			System.out.println("1. Create user");
 			System.out.println("2. Log in");
 			System.out.println("9. < EXIT");
-			authorizedUser = null;
+			LogOut(esql);
 			switch (readChoice()){
 				case 1: CreateUser(esql); break;
-				case 2: authorizedUser = LogIn(esql); break;
+				case 2: LogIn(esql); break;
 				case 9: keepon = false; break;
 				default : System.out.println("Unrecognized choice!"); break;
 			}//end switch
-			if (authorizedUser != null) {
+			if (Session.current().getLogin() != null) {
 			boolean usermenu = true;
-			String user_type = find_type(esql);
-			userType = user_type;
-			switch (user_type){
+			// the menu of the user's type is left when the type changes, so
+			// the menu of the new type is shown next
+			while(usermenu) {
+			String user_type = GetSessionUserType(esql);
+			switch (user_type == null ? "" : user_type.trim()){
 		case "Customer": 
-		  while(usermenu) {
+		  while(usermenu && IsCustomer(esql)) {
 					System.out.println("MAIN MENU");
 					System.out.println("---------");
 					System.out.println("1. Browse Menu by ItemName");
@@ -303,7 +1075,7 @@ public class Cafe {
 				}//end switch
 		} break;
 		case "Employee": 
-			while(usermenu) {
+			while(usermenu && IsEmployee(esql)) {
 					System.out.println("MAIN MENU");
 					System.out.println("---------");
 					System.out.println("1. Browse Menu by ItemName");
@@ -327,8 +1099,8 @@ public class Cafe {
 						default : System.out.println("Unrecognized choice!"); break;
 			}//end switch
 		} break;
-		case "Manager ": 
-			while(usermenu) {
+		case "Manager": 
+			while(usermenu && IsManager(esql)) {
 					System.out.println("MAIN MENU");
 					System.out.println("---------");
 					System.out.println("1. Browse Menu by ItemName");
@@ -354,24 +1126,13 @@ public class Cafe {
 						default : System.out.println("Unrecognized choice!"); break;
 				}//end switch
 			} break;
+		default: usermenu = false; break;
 		}//end switch
+		}//end while
 		}//end if
 		}//end while
-		}catch(Exception e) {
-			System.err.println (e.getMessage ());
-		}finally{
-		// make sure to cleanup the created table and close the connection.
-		try{
-			if(esql != null) {
-				System.out.print("Disconnecting from database...");
-				esql.cleanup ();
-				System.out.println("Done\n\nBye !");
-			}//end if
-		}catch (Exception e) {
-			// ignored.
-		}//end try
-		}//end try
-	}//end main
+		LogOut(esql);
+	}//end RunMenus
 
 /*
 * Custom functions
@@ -395,30 +1156,41 @@ public class Cafe {
 	}
    
 	/*
-	* Determines if authorizedUser is a customer
-	* @return true if authorizedUser is an customer, false otherwise
+	* Gets the logged in user's type, after reading the user's row again
+	* if another session or process changed it
+	* @return user type, null if no user is logged in
+	**/
+	public static String GetSessionUserType(Cafe esql)
+	{
+		GetSessionProfile(esql, Session.current().getLogin());
+		return Session.current().getUserType();
+	}
+   
+	/*
+	* Determines if the logged in user is a customer
+	* @return true if the logged in user is an customer, false otherwise
 	**/
-	public static boolean IsCustomer()
+	public static boolean IsCustomer(Cafe esql)
 	{
-		return IsEqual(userType, "Customer");
+		return IsEqual(GetSessionUserType(esql), "Customer");
 	}
    
 	/*
-	* Determines if authorizedUser is an employee
-	* @return true if authorizedUser is an employee, false otherwise
+	* Determines if the logged in user is an employee
+	* @return true if the logged in user is an employee, false otherwise
 	**/
-	public static boolean IsEmployee()
+	public static boolean IsEmployee(Cafe esql)
 	{
-		return IsEqual(userType, "Employee");
+		return IsEqual(GetSessionUserType(esql), "Employee");
 	}
    
 	/*
-	* Determines if authorizedUser is a manager
-	* @return true if authorizedUser is a manager, false otherwise
+	* Determines if the logged in user is a manager
+	* @return true if the logged in user is a manager, false otherwise
 	**/   
-	public static boolean IsManager()
+	public static boolean IsManager(Cafe esql)
 	{
-		return IsEqual(userType, "Manager");
+		return IsEqual(GetSessionUserType(esql), "Manager");
 	}
 
 	/*
@@ -430,10 +1202,7 @@ public class Cafe {
 	{
 		try
 		{
-			String query = String.format("SELECT * FROM Menu WHERE itemName = '%s'", itemName);
-			List<List<String>> result = esql.executeQueryAndReturnResult(query);
-
-			return result.size() > 0;
+			return esql.getMenu().contains(itemName);
 		}
 		catch (Exception e)
 		{
@@ -442,41 +1211,29 @@ public class Cafe {
 		}
 	} 
 	/*
-	* Gets all order ids from last 24 hours if user is manager or employee
-	* @return result list of orderIds, sorted by most recent order to oldest
+	* Gets one page of order ids from last 24 hours if user is manager or employee
+	*   If unpaidOnly = true, only gets unpaid orders
+	* @param unpaidOnly, beforeOrderId, pageSize
+	*   beforeOrderId is the last orderId of the previous page, or FIRST_PAGE
+	* @return result list of at most pageSize orderIds, sorted by most recent order to oldest
 	**/
-	public static List<Integer> GetAllOrderIdsFromPast24Hours(Cafe esql, boolean unpaidOnly)
+	public static IntList GetOrderIdPageFromPast24Hours(Cafe esql, boolean unpaidOnly, int beforeOrderId, int pageSize)
 	{
-		if (IsManager() || IsEmployee())
+		if (IsManager(esql) || IsEmployee(esql))
 		{
 			try
 			{
-				List<Integer> result = new ArrayList<Integer>();
-				String query = "";
+				CafeQuery query;
 
 				if (unpaidOnly)
 				{
-					query = String.format("SELECT orderid FROM Orders WHERE timeStampRecieved >= NOW() - '1 day'::INTERVAL AND paid = FALSE;");
+					query = CafeQuery.UNPAID_ORDER_IDS_PAST_24_HOURS_PAGE;
 				}
 				else
 				{
-					query = String.format("SELECT orderid FROM Orders WHERE timeStampRecieved >= NOW() - '1 day'::INTERVAL;");
+					query = CafeQuery.ORDER_IDS_PAST_24_HOURS_PAGE;
 				}
-				List<List<String>> orderIdList = esql.executeQueryAndReturnResult(query);
-			   
-				if (orderIdList.size() > 0)
-				{
-					for(List<String> orderId : orderIdList)
-					{
-						int currOrderId = Integer.parseInt(orderId.get(0));
-						result.add(currOrderId);
-					}
-				}
-			   
-				Collections.sort(result);
-				//~ Collections.reverse(result);
-			   
-				return result;
+				return esql.executeQueryForIntList(query, beforeOrderId, pageSize);
 			}
 			catch (Exception e)
 			{
@@ -490,48 +1247,30 @@ public class Cafe {
 			return null;
 		}
 	}
-   
+
 	/*
-	* Gets last 5 order ids of orders made by user
-	*   If unpaidOnly = true, only gets last 5 unpaid orders
-	*   Else gets any last 5 orders
-	* @param unpaidOnly
-	* @return result list of orderIds, sorted by most recent order to oldest
+	* Gets one page of order ids of orders made by user
+	*   If unpaidOnly = true, only gets unpaid orders
+	* @param unpaidOnly, beforeOrderId, pageSize
+	*   beforeOrderId is the last orderId of the previous page, or FIRST_PAGE
+	* @return result list of at most pageSize orderIds, sorted by most recent order to oldest
 	**/
-	public static List<Integer> GetRecentOrderIds(Cafe esql, boolean unpaidOnly)
+	public static IntList GetOrderIdPage(Cafe esql, boolean unpaidOnly, int beforeOrderId, int pageSize)
 	{
-		if (authorizedUser != null)
+		if (Session.current().getLogin() != null)
 		{
 			try
 			{
-				List<Integer> result = new ArrayList<Integer>();
-				String query = "";
+				CafeQuery query;
 				if (unpaidOnly)
 				{
-					query = String.format("SELECT orderid FROM Orders WHERE login = '%s' AND paid = false", authorizedUser);
+					query = CafeQuery.UNPAID_ORDER_IDS_BY_LOGIN_PAGE;
 				}
 				else
 				{
-					query = String.format("SELECT orderid FROM Orders WHERE login = '%s'", authorizedUser);
+					query = CafeQuery.ORDER_IDS_BY_LOGIN_PAGE;
 				}
-				List<List<String>> orderIdList = esql.executeQueryAndReturnResult(query);
-
-				if (orderIdList.size() > 0)
-				{
-					for(List<String> orderId : orderIdList)
-					{
-						int currOrderId = Integer.parseInt(orderId.get(0));
-						result.add(currOrderId);
-					}
-					//push back all the order ID's and pop the front until you have the 5 most recent order IDs
-					Collections.sort(result);
-					while (result.size() > 5)
-					{
-						result.remove(0);
-					}
-					//~ Collections.reverse(result);
-				}
-				return result;
+				return esql.executeQueryForIntList(query, Session.current().getLogin(), beforeOrderId, pageSize);
 			}
 			catch (Exception e)
 			{
@@ -541,67 +1280,159 @@ public class Cafe {
 		}
 		else
 		{
-			System.out.println("HELLO!");
+			System.out.println("Error: User not authorized.\n");
 			return null;
 		}
 	}
+
+	/*
+	* Gets last 5 order ids of orders made by user
+	*   If unpaidOnly = true, only gets last 5 unpaid orders
+	*   Else gets any last 5 orders
+	* @param unpaidOnly
+	* @return result list of orderIds, sorted by most recent order to oldest
+	**/
+	public static IntList GetRecentOrderIds(Cafe esql, boolean unpaidOnly)
+	{
+		return GetOrderIdPage(esql, unpaidOnly, FIRST_PAGE, ORDER_HISTORY_PAGE_SIZE);
+	}
+
+	/*
+	* Asks the user whether to show the next page of orders
+	* @return true if the user answered yes
+	**/
+	public static boolean WantsNextPage()
+	{
+		String answer = GetUserInput("Show older orders? (y/n): ");
+
+		return answer != null && IsEqual(answer.toLowerCase(), "y");
+	}
    
    /*
-	* Prints order summaries of all orders in last 24 hours
+	* Prints order summaries of all orders in last 24 hours, one page at a time
 	*   If unpaidOnly = true, only prints unpaid orders
 	*   Else prints all orders
 	* @return
 	**/   
    public static void PrintAllOrderHistoryFromPast24Hours(Cafe esql, boolean unpaidOnly)
    {
-	   List<Integer> orderIdList = GetAllOrderIdsFromPast24Hours(esql, unpaidOnly);
+	   if (!IsManager(esql) && !IsEmployee(esql))
+	   {
+		   System.out.println("Error: Access denied. Must be employee or manager level.\n");
+		   return;
+	   }
+	   
+	   System.out.println("--------------------------------");
+	   System.out.println("Order History from last 24 hours");
+	   System.out.println("--------------------------------");
+	   
+	   try
+	   {
+		   int beforeOrderId = FIRST_PAGE;
+		   while (true)
+		   {
+			   IntList orderIdList = StreamOrderBoardPage(esql, unpaidOnly, beforeOrderId, ORDER_BOARD_PAGE_SIZE, System.out);
+			   
+			   if (orderIdList.size() < ORDER_BOARD_PAGE_SIZE || !WantsNextPage())
+			   {
+				   return;
+			   }
+			   beforeOrderId = orderIdList.get(orderIdList.size() - 1);
+		   }
+	   }
+	   catch (Exception e)
+	   {
+		   System.err.println (e.getMessage ());
+		   return;
+	   }
+   }
+
+   /*
+	* Prints one page of the 24 hour order board with a single streamed
+	* query. Each order is printed as soon as its last row has arrived.
+	*   If unpaidOnly = true, only prints unpaid orders
+	* @param unpaidOnly, beforeOrderId, pageSize, out
+	*   beforeOrderId is the last orderId of the previous page, or FIRST_PAGE
+	* @return orderIds printed, sorted by most recent order to oldest
+	* @throws java.sql.SQLException when failed to read the orders
+	**/
+   public static IntList StreamOrderBoardPage(Cafe esql, boolean unpaidOnly, int beforeOrderId, int pageSize, final PrintStream out) throws SQLException
+   {
+	   CafeQuery query;
+	   if (unpaidOnly)
+	   {
+		   query = CafeQuery.UNPAID_ORDER_BOARD_PAST_24_HOURS_PAGE;
+	   }
+	   else
+	   {
+		   query = CafeQuery.ORDER_BOARD_PAST_24_HOURS_PAGE;
+	   }
 	   
-	   if (orderIdList != null)
+	   final IntList orderIdList = new IntList();
+	   OrderSummary.Collector printer = new OrderSummary.Collector()
 	   {
-		   System.out.println("--------------------------------");
-		   System.out.println("Order History from last 24 hours");
-		   System.out.println("--------------------------------");
-		   for(Integer currOrderId : orderIdList)
+		   protected void handleSummary(OrderSummary summary)
 		   {
-			   PrintOrderSummary(esql, currOrderId);
+			   orderIdList.add(summary.header.orderId);
+			   PrintOrderSummary(summary, out);
 		   }
-	   }        
-	   return;
+	   };
+	   esql.executeQueryAndStreamResult(query, STREAM_FETCH_SIZE, printer, beforeOrderId, pageSize);
+	   printer.finish();
+	   
+	   return orderIdList;
    }
 
    /*
-	* Prints order summaries of recent orders
+	* Prints order summaries of recent orders, one page at a time
 	*   If unpaidOnly = true, only prints recent unpaid orders
 	*   Else prints all recent orders
 	* @return
 	**/
 	public static void PrintRecentOrderHistory(Cafe esql, boolean unpaidOnly)
 	{
-		List<Integer> orderIdList = GetRecentOrderIds(esql, unpaidOnly);
-		if (orderIdList != null)
+		int beforeOrderId = FIRST_PAGE;
+
+		while (true)
 		{
-			System.out.println("--------------------");
-			System.out.println("Recent Order History");
-			System.out.println("--------------------");
-		   
-			for(Integer currOrderId : orderIdList)
+			IntList orderIdList = GetOrderIdPage(esql, unpaidOnly, beforeOrderId, ORDER_HISTORY_PAGE_SIZE);
+
+			if (orderIdList == null)
 			{
-				PrintOrderSummary(esql, currOrderId);
+				return;
 			}
-		}        
-		return;
+			if (beforeOrderId == FIRST_PAGE)
+			{
+				System.out.println("--------------------");
+				System.out.println("Recent Order History");
+				System.out.println("--------------------");
+			}
+			for(int i = 0; i < orderIdList.size(); ++i)
+			{
+				PrintOrderSummary(esql, orderIdList.get(i));
+			}
+			if (orderIdList.size() < ORDER_HISTORY_PAGE_SIZE || !WantsNextPage())
+			{
+				return;
+			}
+			beforeOrderId = orderIdList.get(orderIdList.size() - 1);
+		}
 	}
    
 	/*
 	* Gets the most recent order id
 	*   If unpaidOnly = true, gets most recent unpaid order id
 	*   Else gets most recent order id
-	* @return orderId
+	* @return orderId, null if the user has no such order
 	**/
 	public static Integer GetMostRecentOrderId(Cafe esql, boolean unpaidOnly)
 	{
-		List<Integer> orderIdList = GetRecentOrderIds(esql, unpaidOnly);
+		IntList orderIdList = GetOrderIdPage(esql, unpaidOnly, FIRST_PAGE, 1);
 	   
+		if (orderIdList == null || orderIdList.isEmpty())
+		{
+			return null;
+		}
 		return orderIdList.get(0);
 	}
 	
@@ -613,8 +1444,7 @@ public class Cafe {
 	{
 		try
 		{
-			String query = String.format("SELECT * FROM ItemStatus WHERE orderid = '%d' AND itemName = '%s';", orderId, itemName);
-			List<List<String>> items = esql.executeQueryAndReturnResult(query);
+			List<List<String>> items = esql.executeQueryAndReturnResult(CafeQuery.ITEM_STATUS_BY_ORDER_AND_ITEM, orderId, itemName);
 			
 			if (items.size() > 0)
 			{
@@ -629,7 +1459,7 @@ public class Cafe {
 					System.out.println("--------------------");
 					System.out.println("Comment: " + comment);
 					System.out.println("Status: " + status);
-					System.out.println("Price: $" + priceFormat.format(price));
+					System.out.println("Price: $" + priceFormat.get().format(price));
 					System.out.println("Last updated: " + timestamp + "\n");
 				}
 			}
@@ -646,6 +1476,20 @@ public class Cafe {
 		}
 	}
 	
+	/*
+	* Prints the name, description and price of a menu item
+	* @param item
+	**/
+	public static void PrintMenuItem(MenuItem item)
+	{
+		double realPrice = RoundUp(item.price, 2);
+
+		System.out.println(item.itemName);
+		System.out.println("--------------------");
+		System.out.println("Description: " + item.description);
+		System.out.println("Price: $" + priceFormat.get().format(realPrice) + "\n");
+	}
+
 	/*
 	* Prints item menu information by itemName
 	* @param itemName
@@ -654,25 +1498,11 @@ public class Cafe {
 	{
 		try
 		{
-			String query = String.format("SELECT * FROM Menu WHERE itemName = '%s';", itemName);
-			List<List<String>> itemsList = esql.executeQueryAndReturnResult(query);
+			MenuItem item = esql.getMenu().get(itemName);
 		   
-			if (itemsList.size() > 0)
+			if (item != null)
 			{
-				for(List<String> items : itemsList)
-				{
-					String name = items.get(0).trim();
-					String price = items.get(2).trim();
-					String description = items.get(3).trim();
-					String imageUrl = items.get(4).trim();
-					double realPrice = Double.parseDouble(price);
-					realPrice = RoundUp(realPrice, 2);
-
-					System.out.println(name);
-					System.out.println("--------------------");
-					System.out.println("Description: " + description);
-					System.out.println("Price: $" + priceFormat.format(realPrice) + "\n");
-				}
+				PrintMenuItem(item);
 			}
 			else
 			{
@@ -696,8 +1526,7 @@ public class Cafe {
 	{
 		try
 		{
-			String query = String.format("SELECT paid FROM Orders WHERE orderid = '%d'", orderId);
-			List<List<String>> results = esql.executeQueryAndReturnResult(query);
+			List<List<String>> results = esql.executeQueryAndReturnResult(CafeQuery.ORDER_PAID, orderId);
 			
 			String result = results.get(0).get(0);
 			
@@ -714,26 +1543,18 @@ public class Cafe {
 	/*
 	* Sets order paid to true or false depending on boolean didPay
 	* @param orderId, didPay
+	* @return true if the order was updated, false if it was not found
 	**/	
-	public static void SetOrderPaid(Cafe esql, int orderId, boolean didPay)
+	public static boolean SetOrderPaid(Cafe esql, int orderId, boolean didPay)
 	{
 		try
 		{
-			String query;
-			if (didPay)
-			{
-				query = String.format("UPDATE Orders SET paid = 'TRUE' WHERE orderid = '%d'", orderId);
-			}
-			else
-			{
-				query = String.format("UPDATE Orders SET paid = 'FALSE' WHERE orderid = '%d'", orderId);
-			}
-			esql.executeUpdate(query);
+			return esql.executeUpdate(CafeQuery.SET_ORDER_PAID, didPay, orderId) > 0;
 		}
 		catch (Exception e)
 		{
 			System.err.println (e.getMessage ());
-			return;
+			return false;
 		}		
 	}
 	
@@ -746,9 +1567,7 @@ public class Cafe {
 	{
 		try
 		{
-			String query = String.format("SELECT * FROM ItemStatus WHERE orderid = '%d';", orderId);
-			
-			return esql.executeQueryAndReturnResult(query);
+			return esql.executeQueryAndReturnResult(CafeQuery.ITEM_STATUSES_BY_ORDER, orderId);
 		}
 		catch (Exception e)
 		{
@@ -762,91 +1581,78 @@ public class Cafe {
 	* 	If ready = true; set status to "Ready"
 	* 	else set status to "In progress"
 	* @param orderId, itemName, ready
+	* @return true if the item was found on the order, false otherwise
 	**/
-	public static void SetItemStatusStatus(Cafe esql, int orderId, String itemName, boolean ready)
+	public static boolean SetItemStatusStatus(Cafe esql, int orderId, String itemName, boolean ready)
 	{
 		try
 		{
-			String timestamp = GetCurrentTimestamp();
+			java.sql.Timestamp timestamp = GetCurrentTimestamp();
 			
-			String query;
+			String status;
 			if (ready)
 			{
-				query = String.format("UPDATE ItemStatus SET lastUpdated = '%s', status = 'Ready' WHERE orderid = '%d' AND itemName = '%s'", timestamp, orderId, itemName);
+				status = "Ready";
 			}
 			else
 			{
-				query = String.format("UPDATE ItemStatus SET lastUpdated = '%s', status = 'In progress' WHERE orderid = '%d' AND itemName = '%s'", timestamp, orderId, itemName);
+				status = "In progress";
 			}
-			esql.executeUpdate(query);
+			List<KitchenTicket> updated = esql.executeQueryAndMapResult(CafeQuery.SET_ITEM_STATUS_STATUS, KitchenTicket.IN_PROGRESS_MAPPER, timestamp, status, orderId, itemName);
+			if (updated.isEmpty())
+			{
+				return false;
+			}
+			esql.itemStatusChanged(orderId, itemName, updated.get(0));
+			
+			return true;
 		}
 		catch (Exception e)
 		{
 			System.err.println (e.getMessage ());
-			return;			
+			return false;
 		}
 	}
 	
 	/*
 	* Determines if an order is ready (AKA all ItemStatus statuses are "Ready")
+	*   Compares the order's items_ready and items_total counters, which a
+	*   trigger on ItemStatus keeps up to date
 	* @param orderId
 	* @return True if ready, false otherwise
 	**/
 	public static boolean IsOrderReady(Cafe esql, int orderId)
 	{
-		List<List<String>> itemStatuses = GetAllOrderItemStatuses(esql, orderId);
-		
-		for(List<String> itemStatus : itemStatuses)
+		try
 		{
-			String status = itemStatus.get(3);
+			Boolean ready = esql.executeQueryForObject(CafeQuery.ORDER_READY, BOOLEAN_MAPPER, orderId);
 			
-			if (!IsEqual(status, "Ready"))
-			{
-				return false;
-			}
+			// an order that does not exist has no item that is not ready
+			return ready == null || ready;
+		}
+		catch (Exception e)
+		{
+			System.err.println (e.getMessage ());
+			return false;
 		}
-		return true;
 	}
 	
 	/*
-	* Gets the Paid status, timeStamp, and Total of an Order
+	* Gets the header row (login, paid status, timeStamp, total) of an Order
 	* @param orderId
-	* @return List<String> containing Paid status, timeStamp, total
+	* @return OrderHeader if found, null otherwise
 	**/	
-	public static List<String> GetPaidTimestampReceivedAndTotalOfOrder(Cafe esql, int orderId)
+	public static OrderHeader GetOrderHeader(Cafe esql, int orderId)
 	{
 		try
 		{
-			String query = String.format("SELECT paid, timeStampRecieved, total FROM Orders WHERE orderid = '%d'", orderId);
-			List<List<String>> results = esql.executeQueryAndReturnResult(query);
+			OrderHeader result = esql.executeQueryForObject(CafeQuery.ORDER_HEADER, OrderHeader.MAPPER, orderId);
 			
-			if (results.size() > 0)
-			{
-				String paidStatus = results.get(0).get(0);
-				if (IsEqual(paidStatus, "t"))
-				{
-					paidStatus = "Paid";
-				}
-				else
-				{
-					paidStatus = "Unpaid";
-				}
-				
-				String timestamp = results.get(0).get(1);
-				String total = results.get(0).get(2);
-				
-				List<String> result = new ArrayList<String>();
-				result.add(paidStatus);
-				result.add(timestamp);
-				result.add(total);
-				
-				return result;
-			}
-			else
+			if (result == null)
 			{
 				System.out.println("Error: Order #" + orderId + " not found.");
-				return null;
 			}
+			return result;
 		}
 		catch (Exception e)
 		{
@@ -856,68 +1662,112 @@ public class Cafe {
 	}
 
 	/*
-	* Prints order summary by orderId
+	* Gets an order with all of its item lines in one query
 	* @param orderId
+	* @return OrderSummary if found, null otherwise
 	**/
-	public static void PrintOrderSummary(Cafe esql, int orderId)
+	public static OrderSummary GetOrderSummary(Cafe esql, int orderId)
 	{
 		try
 		{
-			List<String> orderInfo = GetPaidTimestampReceivedAndTotalOfOrder(esql, orderId);
+			OrderSummary result = OrderSummary.load(esql, orderId);
 			
-			if (orderInfo != null && orderInfo.size() == 3)
-			{
-				String paymentStatus = orderInfo.get(0);
-				String timestamp = orderInfo.get(1);
-				String total = orderInfo.get(2);
-				
-				double realTotal = Double.parseDouble(total);
-				realTotal = RoundUp(realTotal, 2);
-				
-				String orderStatus;
-				if (IsOrderReady(esql, orderId))
-				{
-					orderStatus = "Ready";
-				}
-				else
-				{
-					orderStatus = "Not ready";
-				}
-				
-				System.out.println("----------------------");
-				System.out.println("Order Summary");
-				System.out.println("----------------------");
-				System.out.println("OrderId #" + orderId);
-				System.out.println("Total: $" + priceFormat.format(realTotal)); 
-				System.out.println("Payment Status: " + paymentStatus);
-				System.out.println("Order Status: " + orderStatus);
-				System.out.println("Timestamp: " + timestamp + "\n");    
-				
-				String query = String.format("SELECT * FROM ItemStatus WHERE orderid = '%d'", orderId);
-				List<List<String>> orderList = esql.executeQueryAndReturnResult(query);
-				 
-				if (orderList.size() > 0)
-				{
-					for(List<String> order : orderList)
-					{
-						String itemName = order.get(1);
-						PrintItemStatusInformation(esql, orderId, itemName);
-					}
-				}
-				 
-				return;
-			}
-			else
+			if (result == null)
 			{
-				System.out.println("Error: An error occurred trying to print Order #" + orderId + "'s summary.");
-				return; 
+				System.out.println("Error: Order #" + orderId + " not found.");
 			}
+			return result;
 		}
 		catch (Exception e)
 		{
 			System.err.println (e.getMessage ());
-			return;
+			return null;
+		}
+	}
+
+	/*
+	* Prints order summary by orderId
+	* @param orderId
+	**/
+	public static void PrintOrderSummary(Cafe esql, int orderId)
+	{
+		OrderSummary summary = GetOrderSummary(esql, orderId);
+		
+		if (summary != null)
+		{
+			PrintOrderSummary(summary);
+		}
+		else
+		{
+			System.out.println("Error: An error occurred trying to print Order #" + orderId + "'s summary.");
+		}
+	}
+
+	/*
+	* Prints an order summary that has already been loaded
+	* @param summary
+	**/
+	public static void PrintOrderSummary(OrderSummary summary)
+	{
+		PrintOrderSummary(summary, System.out);
+	}
+
+	/*
+	* Prints an order summary that has already been loaded to out
+	* @param summary, out
+	**/
+	public static void PrintOrderSummary(OrderSummary summary, PrintStream out)
+	{
+		OrderHeader orderInfo = summary.header;
+		
+		String paymentStatus;
+		if (orderInfo.paid)
+		{
+			paymentStatus = "Paid";
 		}
+		else
+		{
+			paymentStatus = "Unpaid";
+		}
+		double realTotal = RoundUp(orderInfo.total, 2);
+		
+		String orderStatus;
+		if (summary.isReady())
+		{
+			orderStatus = "Ready";
+		}
+		else
+		{
+			orderStatus = "Not ready";
+		}
+		
+		out.println("----------------------");
+		out.println("Order Summary");
+		out.println("----------------------");
+		out.println("OrderId #" + orderInfo.orderId);
+		out.println("Total: $" + priceFormat.get().format(realTotal)); 
+		out.println("Payment Status: " + paymentStatus);
+		out.println("Order Status: " + orderStatus);
+		out.println("Timestamp: " + orderInfo.timeStampRecieved + "\n");    
+		
+		for(OrderLine line : summary.lines)
+		{
+			PrintOrderLine(line, out);
+		}
+	}
+
+	/*
+	* Prints one item line of an order summary to out
+	* @param line, out
+	**/
+	public static void PrintOrderLine(OrderLine line, PrintStream out)
+	{
+		out.println(line.itemName);
+		out.println("--------------------");
+		out.println("Comment: " + line.comments);
+		out.println("Status: " + line.status);
+		out.println("Price: $" + priceFormat.get().format(line.price));
+		out.println("Last updated: " + line.lastUpdated + "\n");
 	}
    
 	/*
@@ -930,7 +1780,7 @@ public class Cafe {
 		System.out.print(messageToUser);
 		try
 		{
-			String input = in.readLine();
+			String input = Session.current().readLine();
 			return input;
 		}
 		catch (Exception e)
@@ -963,16 +1813,15 @@ public class Cafe {
 	{
 		try
 		{
-			if (authorizedUser != null)
+			if (Session.current().getLogin() != null)
 			{
-				String query = String.format("SELECT login FROM Orders WHERE orderid = '%d'", orderId);
-				List<List<String>> result = esql.executeQueryAndReturnResult(query);
+				List<List<String>> result = esql.executeQueryAndReturnResult(CafeQuery.ORDER_LOGIN, orderId);
 				
 				if (result.size() > 0)
 				{
 					String login = result.get(0).get(0);
 					
-					return IsEqual(authorizedUser, login);
+					return IsEqual(Session.current().getLogin(), login);
 				}
 				else
 				{
@@ -1003,19 +1852,18 @@ public class Cafe {
 	{
 		try
 		{
-			if (authorizedUser != null)
+			if (Session.current().getLogin() != null)
 			{
-				String query = String.format("SELECT login, paid FROM Orders WHERE orderid = '%d'", orderId);
-				List<List<String>> result = esql.executeQueryAndReturnResult(query);
+				List<List<String>> result = esql.executeQueryAndReturnResult(CafeQuery.ORDER_LOGIN_AND_PAID, orderId);
 
 				if (result.size() > 0)
 				{
 					String login = result.get(0).get(0);
 					String paid = result.get(0).get(1);
 						
-					if (IsEqual(authorizedUser, login))
+					if (IsEqual(Session.current().getLogin(), login))
 					{
-						if (!DidPayOrder(esql, orderId))
+						if (!IsEqual(paid, "t"))
 						{
 							return null;
 						}
@@ -1054,13 +1902,11 @@ public class Cafe {
 	{
 		try
 		{
-			String query = String.format("SELECT price FROM Menu WHERE itemName = '%s'", itemName);
-			List<List<String>> price = esql.executeQueryAndReturnResult(query);
+			MenuItem item = esql.getMenu().get(itemName);
 		   
-			if (price.size() > 0)
+			if (item != null)
 			{
-				double result = Double.parseDouble(price.get(0).get(0));
-				return RoundUp(result, 2);
+				return RoundUp(item.price, 2);
 			}
 			else
 			{
@@ -1083,8 +1929,7 @@ public class Cafe {
 	{
 		try
 		{
-			String query = String.format("SELECT total FROM Orders WHERE orderid = '%d'", orderId);
-			List<List<String>> total = esql.executeQueryAndReturnResult(query);
+			List<List<String>> total = esql.executeQueryAndReturnResult(CafeQuery.ORDER_TOTAL, orderId);
 		   
 			if (total.size() > 0)
 			{
@@ -1112,8 +1957,7 @@ public class Cafe {
 	{
 		try
 		{
-			String query = String.format("SELECT comments FROM ItemStatus WHERE orderid = '%d' AND itemName = '%s';", orderId, itemName);
-			List<List<String>> result = esql.executeQueryAndReturnResult(query);
+			List<List<String>> result = esql.executeQueryAndReturnResult(CafeQuery.ITEM_STATUS_COMMENT, orderId, itemName);
 		   
 			if (result.size() > 0)
 			{
@@ -1130,48 +1974,23 @@ public class Cafe {
 		}    
 	}
    
-	/*
-	* Set an order's total
-	* @param orderId, total
-	**/      
-	public static void SetOrderTotal(Cafe esql, int orderId, double total)
-	{
-		double prevOrderTotal = GetOrderTotal(esql, orderId);
-		
-		if (prevOrderTotal != total)
-		{
-			try
-			{
-				String query = String.format("UPDATE Orders SET total = '%f' WHERE orderid = '%d'", total, orderId);
-				esql.executeUpdate(query);
-				  
-				return;
-			}
-			catch (Exception e)
-			{
-				System.err.println (e.getMessage ());
-				return;
-			}
-		}
-	}
-   
 	/*
 	* Inserts a new order into database and returns the orderId
+	*   The orderId comes back from the INSERT itself (RETURNING orderid)
 	* @param 
 	* @return OrderId if successful, -1 otherwise
 	**/  
 	public static Integer CreateNewOrder(Cafe esql)
 	{
-		if (authorizedUser != null)
+		if (Session.current().getLogin() != null)
 		{
 			try
 			{
-				String timestamp = GetCurrentTimestamp();
+				java.sql.Timestamp timestamp = GetCurrentTimestamp();
 				 
-				String query = "INSERT INTO ORDERS (login, paid, timeStampRecieved, total) VALUES ('" + authorizedUser + "', 'FALSE', '" + timestamp + "', '0.0');";
-				esql.executeUpdate(query);
+				Integer orderId = esql.executeQueryForObject(CafeQuery.INSERT_ORDER, INTEGER_MAPPER, Session.current().getLogin(), timestamp);
 				 
-				return GetMostRecentOrderId(esql, true);
+				return orderId != null ? orderId : -1;
 			}
 			catch (Exception e)
 			{
@@ -1186,127 +2005,164 @@ public class Cafe {
 		}
 	}
 	
+	/*
+	* Submits a cart as a new order
+	*   Creates the Orders row, all of its ItemStatus rows and the order
+	*   total in one statement. If an item has left the menu since the
+	*   cart was filled, nothing is written.
+	* @param login, cart
+	* @return OrderId if successful, -1 otherwise
+	**/
+	public static int SubmitCart(final Cafe esql, final String login, final Cart cart)
+	{
+		try
+		{
+			final java.sql.Timestamp timestamp = GetCurrentTimestamp();
+			
+			OrderHeader order = esql.executeInTransaction(new Transaction<OrderHeader>()
+			{
+				public OrderHeader run() throws SQLException
+				{
+					OrderHeader result = esql.executeQueryForObject(CafeQuery.SUBMIT_CART, OrderHeader.MAPPER,
+						cart.getItemNames(), cart.getComments(), login, timestamp, timestamp, cart.size());
+					
+					if (result == null)
+					{
+						throw new SQLException("Error: An item in your order is no longer on the menu.");
+					}
+					
+					String[] itemNames = cart.getItemNames();
+					String[] comments = cart.getComments();
+					for (int i = 0; i < itemNames.length; ++i)
+					{
+						esql.itemStatusChanged(result.orderId, itemNames[i],
+							new KitchenTicket(result.orderId, itemNames[i], comments[i].trim(), result.timeStampRecieved));
+					}
+					return result;
+				}
+			});
+			
+			return order.orderId;
+		}
+		catch (Exception e)
+		{
+			System.err.println (e.getMessage ());
+			return -1;
+		}
+	}
+	
 	/*
 	* Gets the current timestamp
 	**/    
-	public static String GetCurrentTimestamp()
+	public static java.sql.Timestamp GetCurrentTimestamp()
 	{
 		Date date = new Date();
 		long t = date.getTime();
-		java.sql.Timestamp timestamp = new java.sql.Timestamp(t);
 		
-		return timestamp.toString();
+		return new java.sql.Timestamp(t);
 	}
    
 	/*
 	* Adds Item to Order
+	*   Inserts the ItemStatus row and adds the item's menu price to the
+	*   order total in one statement, so the total cannot be overwritten
+	*   by a concurrent update between reading and writing it
 	* @param orderId, itemName, comment
+	* @return new order total if item was added, -1 otherwise
 	**/      
-	public static void AddItemStatusToOrder(Cafe esql, int orderId, String itemName, String comment)
+	public static double AddItemStatusToOrder(Cafe esql, int orderId, String itemName, String comment)
 	{
-		if (ItemNameDoesExist(esql, itemName))
+		java.sql.Timestamp timestamp = GetCurrentTimestamp();
+		 
+		try
 		{
-			String timestamp = GetCurrentTimestamp();
-			 
-			try
+			// the added line also goes to the kitchen queue
+			final KitchenTicket[] added = new KitchenTicket[1];
+			Double newTotal = esql.executeQueryForObject(CafeQuery.ADD_ITEM_STATUS_TO_ORDER, new RowMapper<Double>()
 			{
-				String query = String.format("INSERT INTO ItemStatus (orderid, itemName, lastUpdated, status, comments) VALUES ('%d','%s','%s','%s','%s')", orderId, itemName, timestamp, "In progress", comment);
-				esql.executeUpdate(query);
-				 
-				if (ItemStatusDoesExist(esql, orderId, itemName))
-				{
-					double itemPrice = GetItemPrice(esql, itemName);
-					double newTotal = GetOrderTotal(esql, orderId) + itemPrice;
-					
-					SetOrderTotal(esql, orderId, newTotal);
-					
-					System.out.printf("\nSuccess: %s has been added to your order.\n", itemName);
-				}
-				else
+				public Double mapRow(ResultSet rs) throws SQLException
 				{
-					System.out.printf("\nError: Could not add %s to your order.\n", itemName);
+					added[0] = KitchenTicket.MAPPER.mapRow(rs);
+					return rs.getDouble(5);
 				}
-				return;
+			}, orderId, timestamp, comment, itemName, orderId);
+			 
+			if (newTotal != null)
+			{
+				esql.itemStatusChanged(orderId, added[0].itemName, added[0]);
+				System.out.printf("\nSuccess: %s has been added to your order.\n", itemName);
+				return newTotal;
 			}
-			catch (Exception e)
+			else
 			{
-				System.err.println (e.getMessage ());
-				return;
+				System.out.println("Error: " + itemName + " could not be found.\n");
+				return -1;
 			}
 		}
-		else
+		catch (Exception e)
 		{
-			System.out.println("Error: " + itemName + " could not be found.\n");
-			return;
+			System.err.println (e.getMessage ());
+			System.out.printf("\nError: Could not add %s to your order.\n", itemName);
+			return -1;
 		}
 	}
    
 	/*
 	* Removes Item from Order
+	*   Deletes the ItemStatus row and takes the item's menu price off the
+	*   order total in one statement, like AddItemStatusToOrder. Whether
+	*   the item was on the order is known from what the statement returns.
 	* @param orderId, itemName
+	* @return new order total if item was removed, -1 otherwise
 	**/      
-	public static void RemoveItemStatusFromOrder(Cafe esql, int orderId, String itemName)
+	public static double RemoveItemStatusFromOrder(Cafe esql, int orderId, String itemName)
 	{
-		if (ItemStatusDoesExist(esql, orderId, itemName))
+		try
 		{
-			try
-			{
-				String query = String.format("DELETE FROM ItemStatus WHERE orderid = '%d' AND itemName = '%s'", orderId, itemName);
-				esql.executeUpdate(query);
-
-				if (!ItemStatusDoesExist(esql, orderId, itemName))
-				{
-					double itemPrice = GetItemPrice(esql, itemName);
-					double newTotal = GetOrderTotal(esql, orderId) - itemPrice;
-					
-					SetOrderTotal(esql, orderId, newTotal);
-					
-					System.out.printf("\nSuccess: '%s' has been removed from your order.\n", itemName);
-				}
-				else
-				{
-					System.out.printf("\nError: Could not remove '%s' from your order.\n", itemName);
-				}
-				return;
-			}
-			catch (Exception e)
+			Double newTotal = esql.executeQueryForObject(CafeQuery.REMOVE_ITEM_STATUS_FROM_ORDER, DOUBLE_MAPPER, orderId, itemName);
+			
+			if (newTotal == null)
 			{
-				System.err.println (e.getMessage ());
-				return;
+				System.out.println("Error: " + itemName + " could not be found.\n");
+				return -1;
 			}
+			esql.itemStatusChanged(orderId, itemName, null);
+			
+			System.out.printf("\nSuccess: '%s' has been removed from your order.\n", itemName);
+			return RoundUp(newTotal, 2);
 		}
-		else
+		catch (Exception e)
 		{
-			System.out.println("Error: " + itemName + " could not be found.\n");
-			return;
+			System.err.println (e.getMessage ());
+			System.out.printf("\nError: Could not remove '%s' from your order.\n", itemName);
+			return -1;
 		}
 	}
    
    /*
 	* Cascade deletes an order
 	*   Deletes all ItemStatus rows associated with order then deletes order row
+	*   Both in one transaction; success is the order's DELETE row count
 	* @param orderId
 	* @return true if successfully deleted order, false otherwise
 	**/      
-	public static boolean CascadeDeleteOrder(Cafe esql, int orderId)
+	public static boolean CascadeDeleteOrder(final Cafe esql, final int orderId)
 	{
-		if (DeleteItemStatusByOrderId(esql, orderId))
-		{	
-			try
-			{
-				String query = String.format("DELETE FROM Orders WHERE orderid = '%d'", orderId);
-				esql.executeUpdate(query);
-				 
-				return !OrderDoesExist(esql, orderId);
-			}
-			catch (Exception e)
+		try
+		{
+			return esql.executeInTransaction(new Transaction<Boolean>()
 			{
-				System.err.println (e.getMessage ());
-				return false;
-			}
+				public Boolean run() throws SQLException
+				{
+					DeleteItemStatusByOrderId(esql, orderId);
+					
+					return esql.executeUpdate(CafeQuery.DELETE_ORDER, orderId) > 0;
+				}
+			});
 		}
-		else
+		catch (Exception e)
 		{
+			System.err.println (e.getMessage ());
 			return false;
 		}
 	}
@@ -1320,12 +2176,9 @@ public class Cafe {
 	{
 		try
 		{
-			String query = String.format("SELECT CAST(CASE WHEN COUNT(*) > 0 THEN 1 ELSE 0 END AS BIT) FROM Orders WHERE orderid = '%d';", orderId);
-			List<List<String>> results = esql.executeQueryAndReturnResult(query);
-			
-			String result = results.get(0).get(0);
+			int rowCount = esql.executeQuery(CafeQuery.ORDER_EXISTS, orderId);
 			
-			return IsEqual(result, "1");
+			return rowCount > 0;
 		}
 		catch (Exception e)
 		{
@@ -1343,12 +2196,9 @@ public class Cafe {
 	{
 		try
 		{
-			String query = String.format("SELECT CAST(CASE WHEN COUNT(*) > 0 THEN 1 ELSE 0 END AS BIT) FROM ItemStatus WHERE orderid = '%d';", orderId);
-			List<List<String>> results = esql.executeQueryAndReturnResult(query);
-			 
-			String result = results.get(0).get(0);
+			int rowCount = esql.executeQuery(CafeQuery.ITEM_STATUS_EXISTS_FOR_ORDER, orderId);
 			
-			return IsEqual(result, "1");
+			return rowCount > 0;
 		}
 		catch (Exception e)
 		{
@@ -1366,12 +2216,9 @@ public class Cafe {
 	{
 		try
 		{
-			String query = String.format("SELECT CAST(CASE WHEN COUNT(*) > 0 THEN 1 ELSE 0 END AS BIT) FROM ItemStatus WHERE orderid = '%d' AND itemName = '%s';", orderId, itemName);
-			List<List<String>> results = esql.executeQueryAndReturnResult(query);
-		   
-			String result = results.get(0).get(0);
+			int rowCount = esql.executeQuery(CafeQuery.ITEM_STATUS_EXISTS, orderId, itemName);
 			
-			return IsEqual(result, "1");
+			return rowCount > 0;
 		}
 		catch (Exception e)
 		{
@@ -1383,22 +2230,15 @@ public class Cafe {
 	/*
 	* Deletes item status by order id
 	* @param orderId
-	* @return true if successfully deleted item status, false otherwise
+	* @return number of item statuses deleted
+	* @throws java.sql.SQLException when failed to delete them
 	**/      
-	public static boolean DeleteItemStatusByOrderId(Cafe esql, int orderId)
+	public static int DeleteItemStatusByOrderId(Cafe esql, int orderId) throws SQLException
 	{
-		try
-		{
-			String query = String.format("DELETE FROM ItemStatus WHERE orderid = '%d'", orderId);
-			esql.executeUpdate(query);
-			   
-			return !OrderHasItemStatuses(esql, orderId);
-		}
-		catch (Exception e)
-		{
-			System.err.println (e.getMessage ());
-			return false;
-		}
+		int deleted = esql.executeUpdate(CafeQuery.DELETE_ITEM_STATUSES_BY_ORDER, orderId);
+		esql.orderItemStatusesDeleted(orderId);
+		
+		return deleted;
 	}
 	
 	/*
@@ -1409,10 +2249,10 @@ public class Cafe {
 	{
 		try
 		{
-			String timestamp = GetCurrentTimestamp();
+			java.sql.Timestamp timestamp = GetCurrentTimestamp();
 			
-			String query = String.format("UPDATE ItemStatus SET lastUpdated = '%s', comments = '%s' WHERE orderid = '%d' AND itemName = '%s';", timestamp, comment, orderId, itemName);
-			esql.executeUpdate(query);
+			KitchenTicket ticket = esql.executeQueryForObject(CafeQuery.SET_ITEM_STATUS_COMMENT, KitchenTicket.IN_PROGRESS_MAPPER, timestamp, comment, orderId, itemName);
+			esql.itemStatusChanged(orderId, itemName, ticket);
 			  
 			return;
 		}
@@ -1463,6 +2303,44 @@ public class Cafe {
 	 * START NEW CUSTOM FUNCTIONS
 	 **/
 	 
+	/*
+	* Gets the profile of the logged in user if it is login's, read again
+	* first if another session or process changed it. A type read again also becomes
+	* the session's user type, so the menus follow it.
+	* @param login
+	* @return UserProfile if login is logged in on this thread, null otherwise
+	**/
+	public static UserProfile GetSessionProfile(Cafe esql, String login)
+	{
+		UserProfile profile = Session.current().getProfile();
+		if (profile == null || !profile.isFor(login))
+		{
+			return null;
+		}
+		if (profile.isStale())
+		{
+			try
+			{
+				profile.markFresh();
+				UserProfile row = esql.executeQueryForObject(CafeQuery.USER_BY_LOGIN, UserProfile.MAPPER, profile.getLogin());
+				if (row == null)
+				{
+					return null;
+				}
+				profile.refresh(row);
+				// the session's role follows the user's type, as in SetUserTypeTo*
+				Session.current().setUserType(profile.getType());
+			}
+			catch (Exception e)
+			{
+				System.err.println (e.getMessage ());
+				profile.markStale();
+				return null;
+			}
+		}
+		return profile;
+	}
+
 	/*
 	* Gets user's password
 	* @param login
@@ -1470,10 +2348,15 @@ public class Cafe {
 	**/   		 
 	public static String GetUserPassword(Cafe esql, String login)
 	{
+		UserProfile profile = GetSessionProfile(esql, login);
+		if (profile != null)
+		{
+			return profile.getPassword();
+		}
+
 		try
 		{
-			String query = String.format("SELECT password FROM Users WHERE login = '%s'", login);
-			List<List<String>> results = esql.executeQueryAndReturnResult(query);
+			List<List<String>> results = esql.executeQueryAndReturnResult(CafeQuery.USER_PASSWORD, login);
 		   
 			if (results.size() > 0)
 			{
@@ -1498,10 +2381,15 @@ public class Cafe {
 	**/ 	
 	public static String GetUserPhoneNumber(Cafe esql, String login)
 	{
+		UserProfile profile = GetSessionProfile(esql, login);
+		if (profile != null)
+		{
+			return profile.getPhoneNum();
+		}
+
 		try
 		{
-			String query = String.format("SELECT phoneNum FROM Users WHERE login = '%s'", login);
-			List<List<String>> results = esql.executeQueryAndReturnResult(query);
+			List<List<String>> results = esql.executeQueryAndReturnResult(CafeQuery.USER_PHONE_NUMBER, login);
 		   
 			if (results.size() > 0)
 			{
@@ -1526,10 +2414,15 @@ public class Cafe {
 	**/ 	
 	public static String GetUserFavItems(Cafe esql, String login)
 	{
+		UserProfile profile = GetSessionProfile(esql, login);
+		if (profile != null)
+		{
+			return profile.getFavItems();
+		}
+
 		try
 		{
-			String query = String.format("SELECT favItems FROM Users WHERE login = '%s'", login);
-			List<List<String>> results = esql.executeQueryAndReturnResult(query);
+			List<List<String>> results = esql.executeQueryAndReturnResult(CafeQuery.USER_FAV_ITEMS, login);
 		   
 			if (results.size() > 0)
 			{
@@ -1554,10 +2447,19 @@ public class Cafe {
 	**/ 
 	public static List<String> GetUserInformation(Cafe esql, String login)
 	{
+		UserProfile profile = GetSessionProfile(esql, login);
+		if (profile != null)
+		{
+			List<String> result = new ArrayList<String>();
+			result.add(profile.getPhoneNum());
+			result.add(profile.getFavItems());
+			
+			return result;
+		}
+
 		try
 		{
-			String query = String.format("SELECT * FROM Users WHERE login = '%s'", login);
-			List<List<String>> results = esql.executeQueryAndReturnResult(query);
+			List<List<String>> results = esql.executeQueryAndReturnResult(CafeQuery.USER_BY_LOGIN, login);
 		   
 			if (results.size() > 0)
 			{
@@ -1619,9 +2521,14 @@ public class Cafe {
 		{
 			try
 			{
-				String query = String.format("UPDATE Users SET phoneNum = '%s' WHERE login = '%s'", phoneNumber, login);
-				esql.executeUpdate(query);
-				  
+				esql.executeUpdate(CafeQuery.SET_USER_PHONE_NUMBER, phoneNumber, login);
+				esql.userChanged(login);
+				
+				UserProfile profile = GetSessionProfile(esql, login);
+				if (profile != null)
+				{
+					profile.setPhoneNum(phoneNumber.trim());
+				}
 				return;
 			}
 			catch (Exception e)
@@ -1662,9 +2569,14 @@ public class Cafe {
 		{
 			try
 			{
-				String query = String.format("UPDATE Users SET favItems = '%s' WHERE login = '%s'", favItems, login);
-				esql.executeUpdate(query);
-				  
+				esql.executeUpdate(CafeQuery.SET_USER_FAV_ITEMS, favItems, login);
+				esql.userChanged(login);
+				
+				UserProfile profile = GetSessionProfile(esql, login);
+				if (profile != null)
+				{
+					profile.setFavItems(favItems.trim());
+				}
 				return;
 			}
 			catch (Exception e)
@@ -1687,9 +2599,14 @@ public class Cafe {
 		{
 			try
 			{
-				String query = String.format("UPDATE Users SET password = '%s' WHERE login = '%s'", password, login);
-				esql.executeUpdate(query);
-				  
+				esql.executeUpdate(CafeQuery.SET_USER_PASSWORD, password, login);
+				esql.userChanged(login);
+				
+				UserProfile profile = GetSessionProfile(esql, login);
+				if (profile != null)
+				{
+					profile.setPassword(password.trim());
+				}
 				return;
 			}
 			catch (Exception e)
@@ -1764,10 +2681,15 @@ public class Cafe {
 	**/ 			
 	public static String GetUserType(Cafe esql, String login)
 	{
+		UserProfile profile = GetSessionProfile(esql, login);
+		if (profile != null)
+		{
+			return profile.getType();
+		}
+
 		try
 		{
-			String query = String.format("SELECT type FROM Users WHERE login = '%s'", login);
-			List<List<String>> results = esql.executeQueryAndReturnResult(query);
+			List<List<String>> results = esql.executeQueryAndReturnResult(CafeQuery.USER_TYPE, login);
 		   
 			if (results.size() > 0)
 			{
@@ -1788,76 +2710,121 @@ public class Cafe {
 	/*
 	* Sets user type to customer
 	* @param login
+	* @return true if the user has that type now, false otherwise
 	**/ 				
-	public static void SetUserTypeToCustomer(Cafe esql, String login)
+	public static boolean SetUserTypeToCustomer(Cafe esql, String login)
 	{
 		String prevType = GetUserType(esql, login);
 		
+		if (prevType == null)
+		{
+			return false;
+		}
 		if (!IsEqual(prevType, "Customer"))
 		{
 			try
 			{
-				String query = String.format("UPDATE Users SET type = '%s' WHERE login = '%s'", "Customer", login);
-				esql.executeUpdate(query);
-				  
-				return;
+				if (esql.executeUpdate(CafeQuery.SET_USER_TYPE, "Customer", login) == 0)
+				{
+					return false;
+				}
+				esql.userChanged(login);
+				
+				UserProfile profile = GetSessionProfile(esql, login);
+				if (profile != null)
+				{
+					profile.setType("Customer");
+					Session.current().setUserType(profile.getType());
+				}
+				return true;
 			}
 			catch (Exception e)
 			{
 				System.err.println (e.getMessage ());
-				return;
+				return false;
 			}
 		}
+		return true;
 	}	
 	
 	/*
 	* Sets user type to manager
 	* @param login
+	* @return true if the user has that type now, false otherwise
 	**/ 	
-	public static void SetUserTypeToManager(Cafe esql, String login)
+	public static boolean SetUserTypeToManager(Cafe esql, String login)
 	{
 		String prevType = GetUserType(esql, login);
 		
+		if (prevType == null)
+		{
+			return false;
+		}
 		if (!IsEqual(prevType, "Manager "))
 		{
 			try
 			{
-				String query = String.format("UPDATE Users SET type = '%s' WHERE login = '%s'", "Manager ", login);
-				esql.executeUpdate(query);
-				  
-				return;
+				if (esql.executeUpdate(CafeQuery.SET_USER_TYPE, "Manager ", login) == 0)
+				{
+					return false;
+				}
+				esql.userChanged(login);
+				
+				UserProfile profile = GetSessionProfile(esql, login);
+				if (profile != null)
+				{
+					profile.setType("Manager");
+					Session.current().setUserType(profile.getType());
+				}
+				return true;
 			}
 			catch (Exception e)
 			{
 				System.err.println (e.getMessage ());
-				return;
+				return false;
 			}
 		}
+		return true;
 	}
 	
 	/*
 	* Sets user type to employee
 	* @param login
+	* @return true if the user has that type now, false otherwise
 	**/ 	
-	public static void SetUserTypeToEmployee(Cafe esql, String login)
+	public static boolean SetUserTypeToEmployee(Cafe esql, String login)
 	{
 		String prevType = GetUserType(esql, login);
 		
+		if (prevType == null)
+		{
+			return false;
+		}
 		if (!IsEqual(prevType, "Employee"))
 		{
 			try
 			{
-				String query = String.format("UPDATE Users SET type = '%s' WHERE login = '%s'", "Employee ", login);
-				esql.executeUpdate(query);
-				  
-				return;
+				if (esql.executeUpdate(CafeQuery.SET_USER_TYPE, "Employee ", login) == 0)
+				{
+					return false;
+				}
+				esql.userChanged(login);
+				
+				UserProfile profile = GetSessionProfile(esql, login);
+				if (profile != null)
+				{
+					profile.setType("Employee");
+					Session.current().setUserType(profile.getType());
+				}
+				return true;
 			}
 			catch (Exception e)
 			{
 				System.err.println (e.getMessage ());
-				return;
+				return false;
 			}
 		}
+		return true;
 	}	
 
 	/*
@@ -1870,25 +2837,17 @@ public class Cafe {
 	**/ 
 	public static boolean TrySetUserType(Cafe esql, String login, int type)
 	{
-		String prevType = GetUserType(esql, login);
-		
 		if (type == 0)
 		{
-			SetUserTypeToCustomer(esql, login);
-			
-			return IsEqual(GetUserType(esql, login), "Customer");
+			return SetUserTypeToCustomer(esql, login);
 		}
 		else if (type == 1)
 		{
-			SetUserTypeToEmployee(esql, login);
-			
-			return IsEqual(GetUserType(esql, login), "Employee");
+			return SetUserTypeToEmployee(esql, login);
 		}
 		else if (type == 2)
 		{
-			SetUserTypeToManager(esql, login);
-			
-			return IsEqual(GetUserType(esql, login), "Manager ");
+			return SetUserTypeToManager(esql, login);
 		}
 		else
 		{
@@ -1905,8 +2864,7 @@ public class Cafe {
 	{
 		try
 		{
-			String query = String.format("SELECT * FROM Users WHERE login = '%s'", login);
-			int userNum = esql.executeQuery(query);
+			int userNum = esql.executeQuery(CafeQuery.USER_BY_LOGIN, login);
 			
 			return userNum > 0;	
 		}
@@ -1926,12 +2884,9 @@ public class Cafe {
 	{
 		try
 		{
-			String query = String.format("SELECT CAST(CASE WHEN COUNT(*) > 0 THEN 1 ELSE 0 END AS BIT) FROM ItemStatus WHERE itemName = '%s';", itemName);
-			List<List<String>> results = esql.executeQueryAndReturnResult(query);
-		   
-			String result = results.get(0).get(0);
+			int rowCount = esql.executeQuery(CafeQuery.ITEM_STATUS_EXISTS_FOR_ITEM, itemName);
 			
-			return IsEqual(result, "1");
+			return rowCount > 0;
 		}
 		catch (Exception e)
 		{
@@ -1943,26 +2898,13 @@ public class Cafe {
 	/*
 	* Gets all order ids with ItemStatuses using itemName
 	* @param itemName
-	* @return List<Integer> orderIds
+	* @return IntList orderIds
 	**/ 	
-	public static List<Integer> GetAllOrderIdWithItemName(Cafe esql, String itemName)
+	public static IntList GetAllOrderIdWithItemName(Cafe esql, String itemName)
 	{
 		try
 		{
-			List<Integer> result = new ArrayList<Integer>();
-			
-			String query = String.format("SELECT orderid FROM ItemStatus WHERE itemName = '%s'", itemName);
-			List<List<String>> orderIds = esql.executeQueryAndReturnResult(query);
-			
-			if (orderIds.size() > 0)
-			{
-				for(List<String> orderId : orderIds)
-				{
-					int currOrderId = Integer.parseInt(orderId.get(0));
-					result.add(currOrderId);
-				}
-			}
-			return result;
+			return esql.executeQueryForIntList(CafeQuery.ORDER_IDS_WITH_ITEM, itemName);
 		}
 		catch (Exception e)
 		{
@@ -1971,86 +2913,80 @@ public class Cafe {
 		}
 	}
 	
-	/*
-	* Subtracts amount from order total
-	* @param orderId, amount
-	**/ 
-	public static void SubtractFromOrderTotal(Cafe esql, int orderId, double amount)
-	{
-		double currTotal = GetOrderTotal(esql, orderId);
-		double newTotal = currTotal - amount;
-		
-		SetOrderTotal(esql, orderId, newTotal);
-	}
-	
 	/*
 	* Deletes item status by item name
+	*   Removes the item from every order and takes its price off each
+	*   order's total with one set-based statement, instead of reading and
+	*   rewriting the total of each order
 	* @param itemName
-	* @return true if successful, false otherwise
+	* @return number of orders the item was removed from
+	* @throws java.sql.SQLException when failed to delete them
 	**/	
-	public static boolean DeleteItemStatusByItemName(Cafe esql, String itemName)
+	public static int DeleteItemStatusByItemName(Cafe esql, String itemName) throws SQLException
 	{
-		try
-		{
-			List<Integer> orderIds = GetAllOrderIdWithItemName(esql, itemName);
-			double itemPrice = GetItemPrice(esql, itemName);
-			
-			for(int orderId : orderIds)
-			{
-				SubtractFromOrderTotal(esql, orderId, itemPrice);
-			}
-			
-			String query = String.format("DELETE FROM ItemStatus WHERE itemName = '%s'", itemName);
-			esql.executeUpdate(query);
-			   
-			return !ItemStatusDoesExist(esql, itemName);
-		}
-		catch (Exception e)
-		{
-			System.err.println (e.getMessage ());
-			return false;
-		}
+		int orders = esql.executeQueryForObject(CafeQuery.REMOVE_ITEM_FROM_ORDERS, INTEGER_MAPPER, itemName);
+		esql.menuItemStatusesDeleted(itemName);
+		
+		return orders;
 	}	
 	
 	/*
 	* Cascade deletes item from menu by itemName
 	* 	Removes all itemStatus with itemName
 	* 	Then removes item from menu
+	*   Both in one transaction, so an order never loses the item without
+	*   its total being reduced, or the other way around
 	* @param itemName
-	* @return true if successful, false otherwise
+	* @return number of orders the item was removed from, -1 if the item
+	*         was not deleted
 	**/		
-	public static void CascadeDeleteItemFromMenu(Cafe esql, String itemName)
+	public static int CascadeDeleteItemFromMenu(final Cafe esql, final String itemName)
 	{
-		if (DeleteItemStatusByItemName(esql, itemName))
+		try
 		{
-			try
-			{
-				String query = String.format("DELETE FROM Menu WHERE itemName = '%s';", itemName);
-				esql.executeUpdate(query);
-			}
-			catch (Exception e)
+			return esql.executeInTransaction(new Transaction<Integer>()
 			{
-				System.err.println (e.getMessage ());	
-				return;
-			}
+				public Integer run() throws SQLException
+				{
+					long changes = esql.menuChanges();
+					int orders = DeleteItemStatusByItemName(esql, itemName);
+					
+					if (esql.executeUpdate(CafeQuery.DELETE_MENU_ITEM, itemName) == 0)
+					{
+						throw new SQLException("Error: Item name not found.");
+					}
+					esql.menuItemChanged(changes, itemName, null);
+					
+					return orders;
+				}
+			});
+		}
+		catch (Exception e)
+		{
+			System.err.println (e.getMessage ());	
+			return -1;
 		}
 	}
 	
 	/*
 	* Add new item to menu
 	* @param itemName, price, description, imageURL
+	* @return true if the item was added, false otherwise
 	**/		
-	public static void AddItemToMenu(Cafe esql, String itemName, String type, double price, String description, String imageURL)
+	public static boolean AddItemToMenu(Cafe esql, String itemName, String type, double price, String description, String imageURL)
 	{
 		try
 		{
-			String query = String.format("INSERT INTO Menu (itemName, type, price, description, imageURL) VALUES ('%s','%s','%f','%s','%s')", itemName, type, price, description, imageURL);
-			esql.executeUpdate(query);
+			long changes = esql.menuChanges();
+			MenuItem item = esql.executeQueryForObject(CafeQuery.INSERT_MENU_ITEM, MenuItem.MAPPER, itemName, type, price, description, imageURL);
+			esql.menuItemChanged(changes, itemName, item);
+			
+			return item != null;
 		}
 		catch (Exception e)
 		{
 			System.err.println (e.getMessage ());	
-			return;
+			return false;
 		}
 	}
 	
@@ -2062,12 +2998,11 @@ public class Cafe {
 	{
 		try
 		{
-			String query = String.format("SELECT type FROM Menu WHERE itemName = '%s'", itemName);
-			List<List<String>> results = esql.executeQueryAndReturnResult(query);
+			MenuItem item = esql.getMenu().get(itemName);
 		   
-			if (results.size() > 0)
+			if (item != null)
 			{
-				return results.get(0).get(0).trim();
+				return item.type;
 			}
 			else
 			{
@@ -2093,8 +3028,9 @@ public class Cafe {
 		{
 			try
 			{
-				String query = String.format("UPDATE Menu SET type = '%s' WHERE itemName = '%s'", type, itemName);
-				esql.executeUpdate(query);
+				long changes = esql.menuChanges();
+				MenuItem item = esql.executeQueryForObject(CafeQuery.SET_MENU_ITEM_TYPE, MenuItem.MAPPER, type, itemName);
+				esql.menuItemChanged(changes, itemName, item);
 				  
 				return;
 			}
@@ -2114,8 +3050,9 @@ public class Cafe {
 		{
 			try
 			{
-				String query = String.format("UPDATE Menu SET price = '%f' WHERE itemName = '%s'", price, itemName);
-				esql.executeUpdate(query);
+				long changes = esql.menuChanges();
+				MenuItem item = esql.executeQueryForObject(CafeQuery.SET_MENU_ITEM_PRICE, MenuItem.MAPPER, price, itemName);
+				esql.menuItemChanged(changes, itemName, item);
 				  
 				return;
 			}
@@ -2131,12 +3068,11 @@ public class Cafe {
 	{
 		try
 		{
-			String query = String.format("SELECT description FROM Menu WHERE itemName = '%s'", itemName);
-			List<List<String>> results = esql.executeQueryAndReturnResult(query);
+			MenuItem item = esql.getMenu().get(itemName);
 		   
-			if (results.size() > 0)
+			if (item != null)
 			{
-				return results.get(0).get(0).trim();
+				return item.description;
 			}
 			else
 			{
@@ -2158,8 +3094,9 @@ public class Cafe {
 		{
 			try
 			{
-				String query = String.format("UPDATE Menu SET description = '%s' WHERE itemName = '%s'", description, itemName);
-				esql.executeUpdate(query);
+				long changes = esql.menuChanges();
+				MenuItem item = esql.executeQueryForObject(CafeQuery.SET_MENU_ITEM_DESCRIPTION, MenuItem.MAPPER, description, itemName);
+				esql.menuItemChanged(changes, itemName, item);
 				  
 				return;
 			}
@@ -2175,12 +3112,11 @@ public class Cafe {
 	{
 		try
 		{
-			String query = String.format("SELECT imageURL FROM Menu WHERE itemName = '%s'", itemName);
-			List<List<String>> results = esql.executeQueryAndReturnResult(query);
+			MenuItem item = esql.getMenu().get(itemName);
 		   
-			if (results.size() > 0)
+			if (item != null)
 			{
-				return results.get(0).get(0).trim();
+				return item.imageURL;
 			}
 			else
 			{
@@ -2202,8 +3138,9 @@ public class Cafe {
 		{
 			try
 			{
-				String query = String.format("UPDATE Menu SET imageURL = '%s' WHERE itemName = '%s'", imageUrl, itemName);
-				esql.executeUpdate(query);
+				long changes = esql.menuChanges();
+				MenuItem item = esql.executeQueryForObject(CafeQuery.SET_MENU_ITEM_IMAGE_URL, MenuItem.MAPPER, imageUrl, itemName);
+				esql.menuItemChanged(changes, itemName, item);
 				  
 				return;
 			}
@@ -2221,9 +3158,13 @@ public class Cafe {
 	
 		if (ItemNameDoesExist(esql, itemName))
 		{
-			CascadeDeleteItemFromMenu(esql, itemName);
+			int orders = CascadeDeleteItemFromMenu(esql, itemName);
 			
-			return !ItemNameDoesExist(esql, itemName);
+			if (orders >= 0)
+			{
+				System.out.printf("Removed %s from the menu and from %d order(s).\n", itemName, orders);
+			}
+			return orders >= 0;
 		}
 		else
 		{
@@ -2248,9 +3189,7 @@ public class Cafe {
 				String description = GetUserInput("Enter item description: ");
 				String imageUrl = GetUserInput("Enter image url: ");
 				
-				AddItemToMenu(esql, itemName, type, realPrice, description, imageUrl);
-				
-				return ItemNameDoesExist(esql, itemName);				
+				return AddItemToMenu(esql, itemName, type, realPrice, description, imageUrl);
 			}
 			catch (NumberFormatException e)
 			{
@@ -2475,7 +3414,7 @@ public class Cafe {
 		do {
 			System.out.print("Please make your choice: ");
 			try { // read the integer, parse it and break.
-				input = Integer.parseInt(in.readLine());
+				input = Integer.parseInt(Session.current().readLine());
 				break;
 			}
 			catch (Exception e) {
@@ -2492,17 +3431,15 @@ public class Cafe {
 	public static void CreateUser(Cafe esql){
 		try{
 			System.out.print("\tEnter user login: ");
-			String login = in.readLine();
+			String login = Session.current().readLine();
 			System.out.print("\tEnter user password: ");
-			String password = in.readLine();
+			String password = Session.current().readLine();
 			System.out.print("\tEnter user phone: ");
-			String phone = in.readLine();
+			String phone = Session.current().readLine();
 			 
 			String type="Customer";
 			String favItems="";
-			String query = String.format("INSERT INTO USERS (phoneNum, login, password, favItems, type) VALUES ('%s','%s','%s','%s','%s')", login, phone, password, favItems, type);
-
-			esql.executeUpdate(query);
+			esql.executeUpdate(CafeQuery.INSERT_USER, phone, login, password, favItems, type);
 			System.out.println ("User successfully created!");
 		}
 		catch(Exception e){
@@ -2519,14 +3456,11 @@ public class Cafe {
 		try
 		{
 			System.out.print("\tEnter user login: ");
-			String login = in.readLine();
+			String login = Session.current().readLine();
 			System.out.print("\tEnter user password: ");
-			String password = in.readLine();
+			String password = Session.current().readLine();
 
-			String query = String.format("SELECT * FROM Users WHERE login = '%s' AND password = '%s'", login, password);
-			int userNum = esql.executeQuery(query);
-			
-			if (userNum > 0)
+			if (Authenticate(esql, login, password))
 			{
 				System.out.print("\n\nSuccessfully logged in\n\n");
 				return login;
@@ -2545,54 +3479,51 @@ public class Cafe {
 	}//end
 
 	/*
-	* Find the user type for an existing user
-	* @return User type or null if user contains illegal type or does not exist.
+	* Logs a user in without prompting (i.e. from a benchmark) and sets
+	* the authorized user, user type and profile. The whole Users row is
+	* read by the login query itself.
+	* @param login, password
+	* @return true if logged in, false otherwise
 	**/
-	public static String find_type(Cafe esql)
+	public static boolean Authenticate(Cafe esql, String login, String password)
 	{
-		// Your code goes here.
-		// ...
-		// X    
 		try
 		{
-			if (authorizedUser != null)
+			LogOut(esql);
+
+			UserProfile profile = esql.executeQueryForObject(CafeQuery.USER_BY_LOGIN_AND_PASSWORD, UserProfile.MAPPER, login, password);
+			if (profile == null)
 			{
-				String query = String.format("SELECT type FROM Users WHERE login = '%s'", authorizedUser);
-				List<List<String>> types = esql.executeQueryAndReturnResult(query);
-			   
-				if (types.size() > 0)
-				{
-					String userType = types.get(0).get(0);
-					if (IsEqual(userType, "Employee") || IsEqual(userType, "Manager") || IsEqual(userType, "Customer"))
-					{
-						if(userType.equals("Manager ")) { //delete later
-							return "Manager ";
-					}	
-					return userType;
-					}
-					else
-					{
-						System.out.println("Error: Illegal user type stored in database.\n");
-						return null;
-					}
-				}
-				else
-				{
-					System.out.printf("\nError: '%s' not found in database.\n", authorizedUser);
-					return null;
-				}
+				return false;
 			}
-			else
+			if (!IsEqual(profile.getType(), "Employee") && !IsEqual(profile.getType(), "Manager") && !IsEqual(profile.getType(), "Customer"))
 			{
-				System.out.println("Error: User not authorized.\n");
-				return null;
+				System.out.println("Error: Illegal user type stored in database.\n");
+				return false;
 			}
+
+			Session.current().logIn(login, profile);
+			esql.addProfile(profile);
+			return true;
 		}
 		catch (Exception e)
 		{
-				System.err.println (e.getMessage ());
-				return null;
+			System.err.println (e.getMessage ());
+			return false;
+		}
+	}
+
+	/*
+	* Forgets the logged in user of the current thread
+	**/
+	public static void LogOut(Cafe esql)
+	{
+		UserProfile profile = Session.current().getProfile();
+		if (profile != null)
+		{
+			esql.removeProfile(profile);
 		}
+		Session.current().logOut();
 	}
 
 	/*
@@ -2629,15 +3560,13 @@ public class Cafe {
 		try
 		{
 			String itemType = GetUserInput("Enter item type: ");
-			String query = String.format("SELECT * FROM Menu WHERE type = '%s'", itemType);
-			List<List<String>> items = esql.executeQueryAndReturnResult(query);
+			List<MenuItem> items = esql.getMenu().getByType(itemType);
 		  
 			if (items.size() > 0)
 			{
-				for(List<String> item : items)
+				for(MenuItem item : items)
 				{
-					String itemName = item.get(0);
-					PrintItemMenuInformation(esql, itemName);
+					PrintMenuItem(item);
 				}
 			}
 			else
@@ -2653,7 +3582,8 @@ public class Cafe {
 	}
 
 	/*
-	* Creates new order and adds items to order
+	* Collects items and comments into a cart, checked against the menu,
+	* then submits the whole cart as one order
 	* Outputs order summary afterwards
 	* @return orderId if order created, -1 otherwise
 	**/
@@ -2664,50 +3594,52 @@ public class Cafe {
 		// X    
 		try
 		{
-			if (authorizedUser != null)
+			if (Session.current().getLogin() != null)
 			{
 				System.out.println("\n-----------------");
 				System.out.println("Creating Order...");
+				System.out.println("-----------------");
 				 
-				int orderId = CreateNewOrder(esql);
-				if (orderId >= 0)
+				Cart cart = new Cart(esql.getMenu());
+				boolean isOrdering = true;
+				
+				while(isOrdering)
 				{
-					System.out.println("#" + orderId);
-					System.out.println("-----------------");
-					boolean isOrdering = true;
-					
-					while(isOrdering)
+					String itemName = GetUserInput("Enter item name ('q' to complete order): ");
+					 
+					if (itemName.equals("q"))
 					{
-						String itemName = GetUserInput("Enter item name ('q' to complete order): ");
-						 
-						if (itemName.equals("q"))
+						isOrdering = false;
+					}
+					else
+					{
+						String userMessage = "Additional comments for " + itemName + "? ";
+						String comment = GetUserInput(userMessage);
+						
+						String resultMessage = cart.add(itemName, comment);
+						if (resultMessage == null)
 						{
-							isOrdering = false;
+							System.out.printf("\nSuccess: %s has been added to your order.\n", itemName);
 						}
 						else
 						{
-							String userMessage = "Additional comments for " + itemName + "? ";
-							String comment = GetUserInput(userMessage);
-							
-							AddItemStatusToOrder(esql, orderId, itemName, comment);
+							System.out.println(resultMessage);
 						}
 					}
-					
-					if (GetOrderTotal(esql, orderId) > 0.0)
-					{
-						PrintOrderSummary(esql, orderId);
-						return orderId;
-					}
-					else
-					{
-						CascadeDeleteOrder(esql, orderId);
-						return -1;
-					}
 				}
-				else
+				
+				if (cart.isEmpty())
 				{
+					System.out.println("You have no items on your order, your order has been cancelled.");
 					return -1;
 				}
+				
+				int orderId = SubmitCart(esql, Session.current().getLogin(), cart);
+				if (orderId >= 0)
+				{
+					PrintOrderSummary(esql, orderId);
+				}
+				return orderId;
 			}
 			else
 			{
@@ -2729,7 +3661,7 @@ public class Cafe {
 	**/
 	public static void UpdateOrder(Cafe esql)
 	{
-		if (authorizedUser != null)
+		if (Session.current().getLogin() != null)
 		{
 			int orderId = Integer.parseInt(GetUserInput("Enter order identification #: "));
 			String resultMessage = CustomerCanEditOrder(esql, orderId);
@@ -2836,7 +3768,7 @@ public class Cafe {
 		// Your code goes here.
 		// ...
 		// X
-		if (authorizedUser != null)
+		if (Session.current().getLogin() != null)
 		{
 			int orderId = Integer.parseInt(GetUserInput("Enter order identification #: "));
 
@@ -2878,21 +3810,18 @@ public class Cafe {
 					break;
 					
 					case 4:
-					SetOrderPaid(esql, orderId, true);
-					
-					if (DidPayOrder(esql, orderId))
+					if (SetOrderPaid(esql, orderId, true))
 					{
 						System.out.println("Success: Order #" + orderId + " paid status has been set to \"Paid\".");
 					}
 					else
 					{
-						System.out.println("Error: Could not set order #" + orderId + " paid status to \"Unpaid\"");
+						System.out.println("Error: Could not set order #" + orderId + " paid status to \"Paid\"");
 					}
 					break;
 					
 					case 5:
-					SetOrderPaid(esql, orderId, false);
-					if (!DidPayOrder(esql, orderId))
+					if (SetOrderPaid(esql, orderId, false))
 					{
 						System.out.println("Success: Order #" + orderId + " paid status has been set to unpaid.");
 					}
@@ -2969,7 +3898,7 @@ public class Cafe {
 		// Your code goes here.
 		// ...
 		// X
-		if (authorizedUser != null)
+		if (Session.current().getLogin() != null)
 		{
 			boolean isUpdating = true;
 				
@@ -2987,7 +3916,7 @@ public class Cafe {
 				switch(readChoice())
 				{
 					case 1:
-					if (TrySetUserPassword(esql, authorizedUser, true))
+					if (TrySetUserPassword(esql, Session.current().getLogin(), true))
 					{
 						System.out.println("Success: The password has been updated.");
 					}
@@ -2998,7 +3927,7 @@ public class Cafe {
 					break;
 					
 					case 2:
-					if (TrySetUserPhonenumber(esql, authorizedUser))
+					if (TrySetUserPhonenumber(esql, Session.current().getLogin()))
 					{
 						System.out.println("Success: The phone number has been updated.");
 					}
@@ -3009,7 +3938,7 @@ public class Cafe {
 					break;
 								 
 					case 3:
-					if (TrySetUserFavItems(esql, authorizedUser))
+					if (TrySetUserFavItems(esql, Session.current().getLogin()))
 					{
 						System.out.println("Success: The favorite items have been updated.");
 					}
@@ -3020,7 +3949,7 @@ public class Cafe {
 					break;
 					
 					case 4:
-					PrintUserInformation(esql, authorizedUser);
+					PrintUserInformation(esql, Session.current().getLogin());
 					break;
 					
 					case 9:
@@ -3045,7 +3974,7 @@ public class Cafe {
 		// Your code goes here.
 		// ...
 		// ...
-		if (authorizedUser != null)
+		if (Session.current().getLogin() != null)
 		{
 			String login = GetUserInput("Enter login to update: ");
 			
@@ -3163,7 +4092,7 @@ public class Cafe {
 
 	public static void UpdateMenu(Cafe esql)
 	{
-		if (IsManager())
+		if (IsManager(esql))
 		{
 			boolean isUpdating = true;
 				
@@ -3232,7 +4161,7 @@ public class Cafe {
 		// X
 		int orderId = Integer.parseInt(GetUserInput("Enter order identification #: "));
 		
-		if (OrderBelongsToCustomer(esql, orderId) || IsEmployee() || IsManager())
+		if (OrderBelongsToCustomer(esql, orderId) || IsEmployee(esql) || IsManager(esql))
 		{
 			PrintOrderSummary(esql, orderId);
 		}
@@ -3255,6 +4184,8 @@ public class Cafe {
 		System.out.println("..........................");
 		System.out.println("1. View unpaid orders from last 24 hours");
 		System.out.println("2. View all orders from last 24 hours");
+		System.out.println("3. View kitchen queue (next items to prepare)");
+		System.out.println("4. View orders ready for pickup (ready but unpaid)");
 		System.out.println("...");
 		System.out.println("9. Return to main menu");
 						 
@@ -3267,6 +4198,14 @@ public class Cafe {
 			case 2:
 			PrintAllOrderHistoryFromPast24Hours(esql, false);
 			break;
+			
+			case 3:
+			PrintKitchenQueue(esql, KITCHEN_QUEUE_SIZE);
+			break;
+			
+			case 4:
+			PrintReadyUnpaidOrders(esql);
+			break;
 						 
 			case 9:
 			return;
@@ -3278,6 +4217,87 @@ public class Cafe {
 		return;
 	}//end
 
+	/*
+	* Prints the next items to prepare, oldest order first, from the
+	* in-memory kitchen queue
+	* @param count how many items at most
+	**/
+	public static void PrintKitchenQueue(Cafe esql, int count)
+	{
+		try
+		{
+			KitchenQueue queue = esql.getKitchenQueue();
+			List<KitchenTicket> next = queue.next(count);
+			
+			System.out.println("\n-------------");
+			System.out.println("Kitchen Queue");
+			System.out.println("-------------");
+			System.out.printf("%d item(s) in progress\n", queue.size());
+			for (KitchenTicket ticket : next)
+			{
+				System.out.printf("\nOrder #%d (%s)\n", ticket.orderId, ticket.timeStampRecieved);
+				System.out.println(ticket.itemName);
+				if (ticket.comments != null && !ticket.comments.isEmpty())
+				{
+					System.out.println("Comment: " + ticket.comments);
+				}
+			}
+		}
+		catch (Exception e)
+		{
+			System.err.println (e.getMessage ());
+		}
+	}
+
+	/*
+	* Prints the orders whose items are all ready but that are not paid
+	* yet, newest first, one page at a time. Reads only Orders: readiness
+	* is the items_ready and items_total counters.
+	* @return
+	**/
+	public static void PrintReadyUnpaidOrders(Cafe esql)
+	{
+		if (!IsManager(esql) && !IsEmployee(esql))
+		{
+			System.out.println("Error: Access denied. Must be employee or manager level.\n");
+			return;
+		}
+		
+		System.out.println("\n-----------------------");
+		System.out.println("Orders Ready for Pickup");
+		System.out.println("-----------------------");
+		
+		try
+		{
+			int beforeOrderId = FIRST_PAGE;
+			while (true)
+			{
+				List<OrderHeader> page = esql.executeQueryAndMapResult(CafeQuery.READY_UNPAID_ORDERS_PAGE, OrderHeader.MAPPER,
+					beforeOrderId, ORDER_BOARD_PAGE_SIZE);
+				
+				if (page.isEmpty() && beforeOrderId == FIRST_PAGE)
+				{
+					System.out.println("No orders are waiting for pickup.");
+				}
+				for (OrderHeader order : page)
+				{
+					System.out.println("OrderId #" + order.orderId + "  " + order.timeStampRecieved + "  $"
+						+ priceFormat.get().format(RoundUp(order.total, 2)) + "  " + order.login);
+				}
+				
+				if (page.size() < ORDER_BOARD_PAGE_SIZE || !WantsNextPage())
+				{
+					return;
+				}
+				beforeOrderId = page.get(page.size() - 1).orderId;
+			}
+		}
+		catch (Exception e)
+		{
+			System.err.println (e.getMessage ());
+		}
+	}
+
 	public static void Query6(Cafe esql){
 		// Your code goes here.
 		// ...
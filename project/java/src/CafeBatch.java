@@ -0,0 +1,843 @@
+/*
+ * Batch mode of the Cafe program
+ * ==============================
+ *
+ * Runs named operations without prompts, one per line of a script file
+ * or of stdin, i.e.
+ *
+ *   add-order Natalie_Braun Coffee "Hot Cocoa"
+ *   {"op": "set-paid", "args": [1234, true]}
+ *
+ * Plain lines are split at spaces; "double quotes" keep an argument with
+ * spaces together. Lines starting with { are JSON objects with the
+ * operation in "op" and its arguments in "args". Blank lines and lines
+ * starting with # are skipped.
+ *
+ * All operations run on one connection, in transactions of up to
+ * cafe.batch.commitEvery operations; a transaction is also committed
+ * when no more input is waiting, so results of piped input come back
+ * without delay. Each operation runs in a savepoint, so a failed one is
+ * undone without losing the others. Once its transaction has committed,
+ * one JSON line per operation is printed to stdout:
+ *
+ *   {"line": 3, "op": "add-order", "ok": true, "orderId": 1234, "total": 3.98}
+ *   {"line": 4, "op": "set-paid", "ok": false, "error": "Order #99 not found"}
+ *
+ * Everything else the program prints goes to stderr. Batch mode is an
+ * operator's tool like BulkLoader: operations name the user they act for
+ * instead of logging in.
+ *
+ * Operations:
+ *   add-order <login> <item>...                 new order of the items
+ *   add-item <orderId> <item> [comment]         add an item to an order
+ *   remove-item <orderId> <item>                remove an item from an order
+ *   set-item-status <orderId> <item> <ready|in-progress>
+ *   set-paid <orderId> [true|false]
+ *   delete-order <orderId>
+ *   add-menu-item <item> <type> <price> [description] [imageURL]
+ *   update-menu <item> <type|price|description|image-url> <value>
+ *   delete-menu-item <item>                     also removes it from every order
+ *   set-user-type <login> <Customer|Employee|Manager>
+ *
+ * Usage: java Cafe <dbname> <port> --script <file|->
+ *        java CafeBatch <dbname> <port> <file|->
+ * Options (system properties):
+ *   cafe.batch.commitEvery  operations per transaction (default 100)
+ */
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class CafeBatch
+{
+	/*
+	* Thrown by an operation that did not do what was asked
+	**/
+	private static final class Failed extends SQLException
+	{
+		private static final long serialVersionUID = 1L;
+
+		Failed(String message)
+		{
+			super(message);
+		}
+	}
+
+	/*
+	* One named operation
+	**/
+	private abstract static class Operation
+	{
+		final String name;
+		final String usage;
+		final int minArgs;
+		final int maxArgs;
+
+		Operation(String name, String usage, int minArgs, int maxArgs)
+		{
+			this.name = name;
+			this.usage = usage;
+			this.minArgs = minArgs;
+			this.maxArgs = maxArgs;
+		}
+
+		/*
+		* Runs the operation
+		* @param args its arguments, between minArgs and maxArgs of them
+		* @param result receives the values reported for it
+		* @throws java.sql.SQLException when it failed
+		**/
+		abstract void run(List<String> args, Map<String, Object> result) throws SQLException;
+	}
+
+	/*
+	* One line of input: an operation to run, or why it cannot run
+	**/
+	private static final class Request
+	{
+		final int line;
+		final String op;
+		final List<String> args;
+		final String error;
+
+		Request(int line, String op, List<String> args, String error)
+		{
+			this.line = line;
+			this.op = op;
+			this.args = args;
+			this.error = error;
+		}
+	}
+
+	private final Cafe esql;
+	private final PrintStream results;
+	private final int commitEvery;
+	private final Map<String, Operation> operations = new LinkedHashMap<String, Operation>();
+
+	// what the running operation prints
+	private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+	private final ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+	private int done = 0;
+	private int failed = 0;
+	private int commits = 0;
+
+	public CafeBatch(Cafe esql, PrintStream results, int commitEvery)
+	{
+		if (commitEvery < 1)
+		{
+			throw new IllegalArgumentException("Invalid batch option: commit every " + commitEvery);
+		}
+		this.esql = esql;
+		this.results = results;
+		this.commitEvery = commitEvery;
+		addOperations();
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		if (args.length != 3)
+		{
+			System.err.println("Usage: java CafeBatch <dbname> <port> <file|->");
+			System.exit(2);
+		}
+
+		// stdout carries only the results
+		PrintStream results = System.out;
+		System.setOut(System.err);
+
+		Class.forName("org.postgresql.Driver");
+		Cafe esql = new Cafe(args[0], args[1]);
+		boolean ok;
+		try
+		{
+			BufferedReader script = args[2].equals("-")
+				? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+				: Files.newBufferedReader(Paths.get(args[2]), StandardCharsets.UTF_8);
+			try
+			{
+				ok = new CafeBatch(esql, results, Integer.getInteger("cafe.batch.commitEvery", 100)).run(script);
+			}
+			finally
+			{
+				script.close();
+			}
+		}
+		finally
+		{
+			esql.cleanup();
+		}
+		System.exit(ok ? 0 : 1);
+	}
+
+	/*
+	* Runs every operation of script
+	* @return true if all of them succeeded
+	**/
+	public boolean run(BufferedReader script) throws IOException
+	{
+		long start = System.nanoTime();
+		List<Request> batch = new ArrayList<Request>();
+		int lineNumber = 0;
+		String line;
+		while ((line = script.readLine()) != null)
+		{
+			++lineNumber;
+			line = line.trim();
+			if (line.isEmpty() || line.startsWith("#"))
+			{
+				continue;
+			}
+			batch.add(parse(lineNumber, line));
+			if (batch.size() >= commitEvery || !script.ready())
+			{
+				runBatch(batch);
+				batch.clear();
+			}
+		}
+		runBatch(batch);
+
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.err.printf("%d operations, %d failed, %d commits in %.2f s (%.0f operations/s)%n", done, failed, commits, seconds,
+			seconds > 0 ? done / seconds : 0.0);
+		return failed == 0;
+	}
+
+	/*
+	* Runs requests in one transaction and prints their results once it
+	* has committed
+	**/
+	private void runBatch(final List<Request> requests)
+	{
+		if (requests.isEmpty())
+		{
+			return;
+		}
+
+		List<Map<String, Object>> outcomes;
+		PrintStream stdout = System.out;
+		PrintStream stderr = System.err;
+		System.setOut(new PrintStream(out, true));
+		System.setErr(new PrintStream(err, true));
+		try
+		{
+			outcomes = esql.executeInTransaction(new Transaction<List<Map<String, Object>>>()
+			{
+				public List<Map<String, Object>> run() throws SQLException
+				{
+					List<Map<String, Object>> outcomes = new ArrayList<Map<String, Object>>();
+					for (Request request : requests)
+					{
+						outcomes.add(runRequest(request));
+					}
+					return outcomes;
+				}
+			});
+			++commits;
+		}
+		catch (SQLException e)
+		{
+			outcomes = new ArrayList<Map<String, Object>>();
+			for (Request request : requests)
+			{
+				outcomes.add(outcome(request, "Not committed: " + e.getMessage()));
+			}
+		}
+		finally
+		{
+			System.setOut(stdout);
+			System.setErr(stderr);
+		}
+
+		for (Map<String, Object> outcome : outcomes)
+		{
+			++done;
+			if (!Boolean.TRUE.equals(outcome.get("ok")))
+			{
+				++failed;
+			}
+			results.println(toJson(outcome));
+		}
+		results.flush();
+	}
+
+	/*
+	* Runs one request in a savepoint of the batch's transaction
+	**/
+	private Map<String, Object> runRequest(final Request request)
+	{
+		if (request.error != null)
+		{
+			return outcome(request, request.error);
+		}
+
+		final Operation operation = operations.get(request.op);
+		try
+		{
+			return esql.executeInSavepoint(new Transaction<Map<String, Object>>()
+			{
+				public Map<String, Object> run() throws SQLException
+				{
+					out.reset();
+					err.reset();
+					Map<String, Object> result = outcome(request, null);
+					try
+					{
+						operation.run(request.args, result);
+					}
+					catch (NumberFormatException e)
+					{
+						throw new Failed("Not a number: " + e.getMessage());
+					}
+
+					// the helpers report failures by printing them
+					String failure = failure();
+					if (failure != null)
+					{
+						throw new Failed(failure);
+					}
+					return result;
+				}
+			});
+		}
+		catch (SQLException e)
+		{
+			return outcome(request, e.getMessage());
+		}
+	}
+
+	/*
+	* Finds what the running operation printed about a failure
+	* @return the message, null if it printed none
+	**/
+	private String failure()
+	{
+		String errors = new String(err.toByteArray(), StandardCharsets.UTF_8).trim();
+		if (!errors.isEmpty())
+		{
+			return errors.split("\n")[0].trim();
+		}
+		for (String line : new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n"))
+		{
+			if (line.contains("Error"))
+			{
+				return line.replaceFirst("^\\s*Error:\\s*", "").trim();
+			}
+		}
+		return null;
+	}
+
+	private static Map<String, Object> outcome(Request request, String error)
+	{
+		Map<String, Object> outcome = new LinkedHashMap<String, Object>();
+		outcome.put("line", request.line);
+		outcome.put("op", request.op);
+		outcome.put("ok", error == null);
+		if (error != null)
+		{
+			outcome.put("error", error);
+		}
+		return outcome;
+	}
+
+	/*
+	* Parses one line of the script
+	**/
+	private Request parse(int line, String text)
+	{
+		String op = null;
+		List<String> args;
+		try
+		{
+			if (text.startsWith("{"))
+			{
+				Map<String, Object> object = new JsonReader(text).readObject();
+				op = object.get("op") instanceof String ? (String) object.get("op") : null;
+				args = new ArrayList<String>();
+				Object values = object.get("args");
+				if (values instanceof List)
+				{
+					for (Object value : (List<?>) values)
+					{
+						args.add(String.valueOf(value));
+					}
+				}
+				else if (values != null)
+				{
+					return new Request(line, op, null, "\"args\" must be an array");
+				}
+			}
+			else
+			{
+				args = split(text);
+				op = args.remove(0);
+			}
+		}
+		catch (IllegalArgumentException e)
+		{
+			return new Request(line, op, null, e.getMessage());
+		}
+
+		Operation operation = op != null ? operations.get(op) : null;
+		if (operation == null)
+		{
+			return new Request(line, op, null, "Unknown operation " + op + ", expected one of " + operations.keySet());
+		}
+		if (args.size() < operation.minArgs || args.size() > operation.maxArgs)
+		{
+			return new Request(line, op, null, "Usage: " + op + " " + operation.usage);
+		}
+		return new Request(line, op, args, null);
+	}
+
+	/*
+	* Splits a plain line at spaces, keeping "quoted" arguments together
+	**/
+	private static List<String> split(String text)
+	{
+		List<String> words = new ArrayList<String>();
+		StringBuilder word = new StringBuilder();
+		boolean quoted = false;
+		boolean inWord = false;
+		for (int i = 0; i < text.length(); ++i)
+		{
+			char c = text.charAt(i);
+			if (c == '"')
+			{
+				quoted = !quoted;
+				inWord = true;
+			}
+			else if (Character.isWhitespace(c) && !quoted)
+			{
+				if (inWord)
+				{
+					words.add(word.toString());
+					word.setLength(0);
+					inWord = false;
+				}
+			}
+			else
+			{
+				word.append(c);
+				inWord = true;
+			}
+		}
+		if (quoted)
+		{
+			throw new IllegalArgumentException("Unterminated quote");
+		}
+		if (inWord)
+		{
+			words.add(word.toString());
+		}
+		return words;
+	}
+
+	private static String toJson(Map<String, Object> object)
+	{
+		StringBuilder json = new StringBuilder("{");
+		for (Map.Entry<String, Object> entry : object.entrySet())
+		{
+			if (json.length() > 1)
+			{
+				json.append(", ");
+			}
+			appendString(json, entry.getKey());
+			json.append(": ");
+			Object value = entry.getValue();
+			if (value instanceof Number || value instanceof Boolean)
+			{
+				json.append(value);
+			}
+			else if (value == null)
+			{
+				json.append("null");
+			}
+			else
+			{
+				appendString(json, value.toString());
+			}
+		}
+		return json.append('}').toString();
+	}
+
+	private static void appendString(StringBuilder json, String text)
+	{
+		json.append('"');
+		for (int i = 0; i < text.length(); ++i)
+		{
+			char c = text.charAt(i);
+			if (c == '"' || c == '\\')
+			{
+				json.append('\\').append(c);
+			}
+			else if (c < 0x20)
+			{
+				json.append(String.format("\\u%04x", (int) c));
+			}
+			else
+			{
+				json.append(c);
+			}
+		}
+		json.append('"');
+	}
+
+	/*
+	* Reads the JSON of one script line. Numbers are kept as written.
+	**/
+	private static final class JsonReader
+	{
+		private final String text;
+		private int at = 0;
+
+		JsonReader(String text)
+		{
+			this.text = text;
+		}
+
+		Map<String, Object> readObject()
+		{
+			Object value = readValue();
+			skipSpace();
+			if (!(value instanceof Map) || at != text.length())
+			{
+				throw new IllegalArgumentException("Expected one JSON object per line");
+			}
+			@SuppressWarnings("unchecked")
+			Map<String, Object> object = (Map<String, Object>) value;
+			return object;
+		}
+
+		private Object readValue()
+		{
+			skipSpace();
+			if (at >= text.length())
+			{
+				throw error("value");
+			}
+			char c = text.charAt(at);
+			if (c == '{')
+			{
+				++at;
+				Map<String, Object> object = new LinkedHashMap<String, Object>();
+				if (!skip('}'))
+				{
+					do
+					{
+						skipSpace();
+						String key = readString();
+						expect(':');
+						object.put(key, readValue());
+					}
+					while (skip(','));
+					expect('}');
+				}
+				return object;
+			}
+			if (c == '[')
+			{
+				++at;
+				List<Object> array = new ArrayList<Object>();
+				if (!skip(']'))
+				{
+					do
+					{
+						array.add(readValue());
+					}
+					while (skip(','));
+					expect(']');
+				}
+				return array;
+			}
+			if (c == '"')
+			{
+				return readString();
+			}
+
+			// number, true, false or null, kept as written
+			int start = at;
+			while (at < text.length() && "{}[],: \t".indexOf(text.charAt(at)) < 0)
+			{
+				++at;
+			}
+			String word = text.substring(start, at);
+			if (word.isEmpty())
+			{
+				throw error("value");
+			}
+			return word.equals("null") ? null : word;
+		}
+
+		private String readString()
+		{
+			if (at >= text.length() || text.charAt(at) != '"')
+			{
+				throw error("string");
+			}
+			StringBuilder string = new StringBuilder();
+			++at;
+			while (at < text.length())
+			{
+				char c = text.charAt(at++);
+				if (c == '"')
+				{
+					return string.toString();
+				}
+				if (c != '\\')
+				{
+					string.append(c);
+					continue;
+				}
+				if (at >= text.length())
+				{
+					break;
+				}
+				char escaped = text.charAt(at++);
+				switch (escaped)
+				{
+					case 'n': string.append('\n'); break;
+					case 't': string.append('\t'); break;
+					case 'r': string.append('\r'); break;
+					case 'b': string.append('\b'); break;
+					case 'f': string.append('\f'); break;
+					case 'u':
+						if (at + 4 > text.length())
+						{
+							throw error("\\u escape");
+						}
+						string.append((char) Integer.parseInt(text.substring(at, at + 4), 16));
+						at += 4;
+						break;
+					default: string.append(escaped); break;
+				}
+			}
+			throw error("end of string");
+		}
+
+		private boolean skip(char c)
+		{
+			skipSpace();
+			if (at < text.length() && text.charAt(at) == c)
+			{
+				++at;
+				return true;
+			}
+			return false;
+		}
+
+		private void expect(char c)
+		{
+			if (!skip(c))
+			{
+				throw error("'" + c + "'");
+			}
+		}
+
+		private void skipSpace()
+		{
+			while (at < text.length() && Character.isWhitespace(text.charAt(at)))
+			{
+				++at;
+			}
+		}
+
+		private IllegalArgumentException error(String expected)
+		{
+			return new IllegalArgumentException("Invalid JSON: expected " + expected + " at column " + (at + 1));
+		}
+	}
+
+	/*
+	* Registers the operations, named after what they do
+	**/
+	private void addOperations()
+	{
+		add(new Operation("add-order", "<login> <item>...", 2, Integer.MAX_VALUE)
+		{
+			void run(List<String> args, Map<String, Object> result) throws SQLException
+			{
+				String login = args.get(0);
+				requireLogin(login);
+				Cart cart = new Cart(esql.getMenu());
+				for (String itemName : args.subList(1, args.size()))
+				{
+					String error = cart.add(itemName, "");
+					if (error != null)
+					{
+						throw new Failed(error.replaceFirst("^Error:\\s*", "").trim());
+					}
+				}
+				int orderId = Cafe.SubmitCart(esql, login, cart);
+				if (orderId < 0)
+				{
+					throw new Failed("Order was not added");
+				}
+				result.put("orderId", orderId);
+				result.put("total", cart.getTotal());
+			}
+		});
+		add(new Operation("add-item", "<orderId> <item> [comment]", 2, 3)
+		{
+			void run(List<String> args, Map<String, Object> result) throws SQLException
+			{
+				int orderId = Integer.parseInt(args.get(0));
+				double total = Cafe.AddItemStatusToOrder(esql, orderId, args.get(1), args.size() > 2 ? args.get(2) : "");
+				if (total < 0)
+				{
+					throw new Failed("Could not add " + args.get(1) + " to order #" + orderId);
+				}
+				result.put("total", total);
+			}
+		});
+		add(new Operation("remove-item", "<orderId> <item>", 2, 2)
+		{
+			void run(List<String> args, Map<String, Object> result) throws SQLException
+			{
+				int orderId = Integer.parseInt(args.get(0));
+				double total = Cafe.RemoveItemStatusFromOrder(esql, orderId, args.get(1));
+				if (total < 0)
+				{
+					throw new Failed(args.get(1) + " is not in order #" + orderId);
+				}
+				result.put("total", total);
+			}
+		});
+		add(new Operation("set-item-status", "<orderId> <item> <ready|in-progress>", 3, 3)
+		{
+			void run(List<String> args, Map<String, Object> result) throws SQLException
+			{
+				int orderId = Integer.parseInt(args.get(0));
+				String status = args.get(2);
+				if (!status.equals("ready") && !status.equals("in-progress"))
+				{
+					throw new Failed("Status must be ready or in-progress, not " + status);
+				}
+				if (!Cafe.SetItemStatusStatus(esql, orderId, args.get(1), status.equals("ready")))
+				{
+					throw new Failed(args.get(1) + " is not in order #" + orderId);
+				}
+			}
+		});
+		add(new Operation("set-paid", "<orderId> [true|false]", 1, 2)
+		{
+			void run(List<String> args, Map<String, Object> result) throws SQLException
+			{
+				int orderId = Integer.parseInt(args.get(0));
+				boolean paid = args.size() < 2 || Boolean.parseBoolean(args.get(1));
+				if (!Cafe.SetOrderPaid(esql, orderId, paid))
+				{
+					throw new Failed("Order #" + orderId + " not found");
+				}
+				result.put("paid", paid);
+			}
+		});
+		add(new Operation("delete-order", "<orderId>", 1, 1)
+		{
+			void run(List<String> args, Map<String, Object> result) throws SQLException
+			{
+				int orderId = Integer.parseInt(args.get(0));
+				if (!Cafe.CascadeDeleteOrder(esql, orderId))
+				{
+					throw new Failed("Order #" + orderId + " not found");
+				}
+			}
+		});
+		add(new Operation("add-menu-item", "<item> <type> <price> [description] [imageURL]", 3, 5)
+		{
+			void run(List<String> args, Map<String, Object> result) throws SQLException
+			{
+				if (Cafe.ItemNameDoesExist(esql, args.get(0)))
+				{
+					throw new Failed(args.get(0) + " is already on the menu");
+				}
+				if (!Cafe.AddItemToMenu(esql, args.get(0), args.get(1), Double.parseDouble(args.get(2)),
+					args.size() > 3 ? args.get(3) : "", args.size() > 4 ? args.get(4) : ""))
+				{
+					throw new Failed(args.get(0) + " was not added");
+				}
+			}
+		});
+		add(new Operation("update-menu", "<item> <type|price|description|image-url> <value>", 3, 3)
+		{
+			void run(List<String> args, Map<String, Object> result) throws SQLException
+			{
+				String itemName = args.get(0);
+				requireMenuItem(itemName);
+				String value = args.get(2);
+				switch (args.get(1))
+				{
+					case "type": Cafe.SetMenuItemType(esql, itemName, value); break;
+					case "price": Cafe.SetMenuItemPrice(esql, itemName, Double.parseDouble(value)); break;
+					case "description": Cafe.SetMenuItemDescription(esql, itemName, value); break;
+					case "image-url": Cafe.SetMenuItemImageUrl(esql, itemName, value); break;
+					default: throw new Failed("Unknown menu field " + args.get(1));
+				}
+			}
+		});
+		add(new Operation("delete-menu-item", "<item>", 1, 1)
+		{
+			void run(List<String> args, Map<String, Object> result) throws SQLException
+			{
+				requireMenuItem(args.get(0));
+				int orders = Cafe.CascadeDeleteItemFromMenu(esql, args.get(0));
+				if (orders < 0)
+				{
+					throw new Failed(args.get(0) + " was not deleted");
+				}
+				result.put("orders", orders);
+			}
+		});
+		add(new Operation("set-user-type", "<login> <Customer|Employee|Manager>", 2, 2)
+		{
+			void run(List<String> args, Map<String, Object> result) throws SQLException
+			{
+				String login = args.get(0);
+				boolean set;
+				switch (args.get(1))
+				{
+					case "Customer": set = Cafe.SetUserTypeToCustomer(esql, login); break;
+					case "Employee": set = Cafe.SetUserTypeToEmployee(esql, login); break;
+					case "Manager": set = Cafe.SetUserTypeToManager(esql, login); break;
+					default: throw new Failed("Unknown user type " + args.get(1));
+				}
+				if (!set)
+				{
+					throw new Failed("User " + login + " not found");
+				}
+			}
+		});
+	}
+
+	private void add(Operation operation)
+	{
+		operations.put(operation.name, operation);
+	}
+
+	private void requireLogin(String login) throws SQLException
+	{
+		if (!Cafe.LoginDoesExist(esql, login))
+		{
+			throw new Failed("User " + login + " not found");
+		}
+	}
+
+	private void requireMenuItem(String itemName) throws SQLException
+	{
+		if (!Cafe.ItemNameDoesExist(esql, itemName))
+		{
+			throw new Failed(itemName + " is not on the menu");
+		}
+	}
+}//end CafeBatch
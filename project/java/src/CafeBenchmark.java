@@ -0,0 +1,405 @@
+/*
+ * Benchmarks of the Cafe data-access hot paths
+ * ============================================
+ *
+ * Times the helpers behind the menus against a running Postgres, best
+ * loaded with DataGenerator output. Each benchmark is warmed up first,
+ * then run for a fixed time; the latency of every call is recorded and
+ * reported as mean, p50, p99 and throughput. Benchmarks that write run
+ * each call in a transaction that is rolled back afterwards, timing only
+ * the call itself, so the data stays the same from run to run.
+ *
+ * Results are written as JSON (one benchmark per line) so two runs can
+ * be compared with --compare.
+ *
+ * Usage: java CafeBenchmark <dbname> <port> <login> <password> <results.json> [benchmark...]
+ *        java CafeBenchmark --compare <before.json> <after.json>
+ * Options (system properties):
+ *   cafe.bench.warmupSeconds  warm-up time per benchmark (default 2)
+ *   cafe.bench.seconds        measured time per benchmark (default 5)
+ *   cafe.bench.cascadeOrders  orders holding the item CascadeDeleteItemFromMenu
+ *                             removes (default 50)
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class CafeBenchmark
+{
+	// orders given the benchmark item before CascadeDeleteItemFromMenu removes it
+	private static final int CASCADE_ORDERS = Integer.getInteger("cafe.bench.cascadeOrders", 50);
+
+	private static final String BENCH_ITEM = "Benchmark item";
+
+	// "name": "...", "meanMicros": ... of a result line
+	private static final Pattern RESULT_LINE = Pattern.compile("\"name\": \"(\\w+)\".*\"meanMicros\": ([0-9.]+).*\"p99Micros\": ([0-9.]+)");
+
+	/*
+	* One benchmarked operation
+	**/
+	private abstract static class Benchmark
+	{
+		final String name;
+
+		Benchmark(String name)
+		{
+			this.name = name;
+		}
+
+		/*
+		* Runs the operation once
+		* @return nanoseconds spent in the timed part
+		**/
+		abstract long run() throws SQLException;
+	}
+
+	/*
+	* Latencies of one benchmark
+	**/
+	private static final class Result
+	{
+		final String name;
+		final long[] nanos;
+		final double seconds;
+
+		Result(String name, long[] nanos, double seconds)
+		{
+			this.name = name;
+			this.nanos = nanos;
+			this.seconds = seconds;
+			Arrays.sort(this.nanos);
+		}
+
+		double meanMicros()
+		{
+			long total = 0;
+			for (long n : nanos)
+			{
+				total += n;
+			}
+			return nanos.length == 0 ? 0 : total / 1000.0 / nanos.length;
+		}
+
+		double percentileMicros(double percentile)
+		{
+			return nanos.length == 0 ? 0 : nanos[(int) Math.min(nanos.length - 1, Math.floor(percentile * nanos.length))] / 1000.0;
+		}
+
+		String toJson()
+		{
+			return String.format(Locale.ROOT, "{\"name\": \"%s\", \"calls\": %d, \"opsPerSecond\": %.1f, \"meanMicros\": %.1f, \"p50Micros\": %.1f, \"p99Micros\": %.1f}",
+				name, nanos.length, nanos.length / seconds, meanMicros(), percentileMicros(0.50), percentileMicros(0.99));
+		}
+	}
+
+	private final Cafe esql;
+	private final String login;
+	private final String password;
+
+	// fixtures, found once before the benchmarks run
+	private int orderId;
+	private String itemNotInOrder;
+
+	public CafeBenchmark(Cafe esql, String login, String password)
+	{
+		this.esql = esql;
+		this.login = login;
+		this.password = password;
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		if (args.length == 3 && args[0].equals("--compare"))
+		{
+			compare(new File(args[1]), new File(args[2]));
+			return;
+		}
+		if (args.length < 5)
+		{
+			System.err.println("Usage: java CafeBenchmark <dbname> <port> <login> <password> <results.json> [benchmark...]");
+			System.err.println("       java CafeBenchmark --compare <before.json> <after.json>");
+			System.exit(2);
+		}
+
+		Class.forName("org.postgresql.Driver");
+		Cafe esql = new Cafe(args[0], args[1]);
+		try
+		{
+			CafeBenchmark bench = new CafeBenchmark(esql, args[2], args[3]);
+			bench.setUp();
+
+			List<String> only = Arrays.asList(args).subList(5, args.length);
+			List<Result> results = new ArrayList<Result>();
+			for (Benchmark benchmark : bench.benchmarks())
+			{
+				if (only.isEmpty() || only.contains(benchmark.name))
+				{
+					results.add(measure(benchmark));
+				}
+			}
+			write(new File(args[4]), results);
+		}
+		finally
+		{
+			esql.cleanup();
+		}
+	}
+
+	/*
+	* Logs in and finds an order of the user and a menu item not on it
+	* @throws java.lang.IllegalStateException when the database has no such data
+	**/
+	public void setUp() throws SQLException
+	{
+		if (!Cafe.Authenticate(esql, login, password))
+		{
+			throw new IllegalStateException("Could not log in as " + login);
+		}
+		Integer recent = Cafe.GetMostRecentOrderId(esql, false);
+		if (recent == null)
+		{
+			throw new IllegalStateException(login + " has no orders to benchmark with");
+		}
+		orderId = recent;
+
+		for (MenuItem item : MenuSnapshot.load(esql).items())
+		{
+			if (!Cafe.ItemStatusDoesExist(esql, orderId, item.itemName))
+			{
+				itemNotInOrder = item.itemName;
+				break;
+			}
+		}
+		if (itemNotInOrder == null)
+		{
+			throw new IllegalStateException("Order #" + orderId + " already has every menu item");
+		}
+	}
+
+	/*
+	* Lists the benchmarks, named after the helper they time
+	**/
+	public List<Benchmark> benchmarks()
+	{
+		List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+
+		benchmarks.add(new Benchmark("executeQueryAndReturnResult")
+		{
+			long run() throws SQLException
+			{
+				long start = System.nanoTime();
+				esql.executeQueryAndReturnResult(CafeQuery.ITEM_STATUSES_BY_ORDER, orderId);
+				return System.nanoTime() - start;
+			}
+		});
+		benchmarks.add(new Benchmark("AddItemStatusToOrder")
+		{
+			long run() throws SQLException
+			{
+				return rolledBack(new Transaction<Long>()
+				{
+					public Long run()
+					{
+						long start = System.nanoTime();
+						Cafe.AddItemStatusToOrder(esql, orderId, itemNotInOrder, "benchmark");
+						return System.nanoTime() - start;
+					}
+				});
+			}
+		});
+		benchmarks.add(new Benchmark("PrintOrderSummary")
+		{
+			long run()
+			{
+				long start = System.nanoTime();
+				Cafe.PrintOrderSummary(esql, orderId);
+				return System.nanoTime() - start;
+			}
+		});
+		benchmarks.add(new Benchmark("GetRecentOrderIds")
+		{
+			long run()
+			{
+				long start = System.nanoTime();
+				Cafe.GetRecentOrderIds(esql, false);
+				return System.nanoTime() - start;
+			}
+		});
+		benchmarks.add(new Benchmark("PrintKitchenQueue")
+		{
+			long run()
+			{
+				long start = System.nanoTime();
+				Cafe.PrintKitchenQueue(esql, 20);
+				return System.nanoTime() - start;
+			}
+		});
+		benchmarks.add(new Benchmark("LogIn")
+		{
+			long run()
+			{
+				// the part of LogIn after the prompts
+				long start = System.nanoTime();
+				Cafe.Authenticate(esql, login, password);
+				return System.nanoTime() - start;
+			}
+		});
+		benchmarks.add(new Benchmark("CascadeDeleteItemFromMenu")
+		{
+			long run() throws SQLException
+			{
+				return rolledBack(new Transaction<Long>()
+				{
+					public Long run() throws SQLException
+					{
+						Cafe.AddItemToMenu(esql, BENCH_ITEM, "Drinks", 1.0, "", "");
+						esql.executeUpdate("INSERT INTO ItemStatus (orderid, itemName, lastUpdated, status, comments) "
+							+ "SELECT orderid, '" + BENCH_ITEM + "', NOW(), 'Ready', '' FROM Orders ORDER BY orderid DESC LIMIT " + CASCADE_ORDERS);
+
+						long start = System.nanoTime();
+						Cafe.CascadeDeleteItemFromMenu(esql, BENCH_ITEM);
+						return System.nanoTime() - start;
+					}
+				});
+			}
+		});
+
+		return benchmarks;
+	}
+
+	/*
+	* Runs work in a transaction and rolls it back
+	* @return the nanoseconds work reported
+	**/
+	private long rolledBack(final Transaction<Long> work) throws SQLException
+	{
+		final long[] nanos = new long[1];
+		try
+		{
+			esql.executeInTransaction(new Transaction<Void>()
+			{
+				public Void run() throws SQLException
+				{
+					nanos[0] = work.run();
+					throw new Rollback();
+				}
+			});
+		}
+		catch (Rollback expected)
+		{
+			// rolled back
+		}
+		return nanos[0];
+	}
+
+	private static Result measure(Benchmark benchmark) throws SQLException
+	{
+		long warmupNanos = Long.getLong("cafe.bench.warmupSeconds", 2L) * 1000000000L;
+		long measureNanos = Long.getLong("cafe.bench.seconds", 5L) * 1000000000L;
+
+		// the helpers print their results; keep that out of the measurements
+		PrintStream out = System.out;
+		System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+		long[] nanos = new long[1024];
+		int calls = 0;
+		long start;
+		try
+		{
+			long warmupEnd = System.nanoTime() + warmupNanos;
+			while (System.nanoTime() < warmupEnd)
+			{
+				benchmark.run();
+			}
+
+			start = System.nanoTime();
+			long end = start + measureNanos;
+			while (System.nanoTime() < end)
+			{
+				if (calls == nanos.length)
+				{
+					nanos = Arrays.copyOf(nanos, calls * 2);
+				}
+				nanos[calls++] = benchmark.run();
+			}
+		}
+		finally
+		{
+			System.setOut(out);
+		}
+		Result result = new Result(benchmark.name, Arrays.copyOf(nanos, calls), (System.nanoTime() - start) / 1e9);
+
+		System.out.printf(Locale.ROOT, "%-28s %8d calls %10.1f us mean %10.1f us p50 %10.1f us p99%n",
+			result.name, calls, result.meanMicros(), result.percentileMicros(0.50), result.percentileMicros(0.99));
+		return result;
+	}
+
+	private static void write(File file, List<Result> results) throws IOException
+	{
+		Writer out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8);
+		try
+		{
+			out.write("{\"timestamp\": \"" + new java.sql.Timestamp(System.currentTimeMillis()) + "\", \"results\": [\n");
+			for (int i = 0; i < results.size(); ++i)
+			{
+				out.write("  " + results.get(i).toJson() + (i + 1 < results.size() ? ",\n" : "\n"));
+			}
+			out.write("]}\n");
+		}
+		finally
+		{
+			out.close();
+		}
+		System.out.println("Results written to " + file);
+	}
+
+	/*
+	* Prints the mean and p99 of every benchmark found in both result files
+	**/
+	private static void compare(File before, File after) throws IOException
+	{
+		Map<String, double[]> old = read(before);
+		Map<String, double[]> current = read(after);
+
+		System.out.printf("%-28s %12s %12s %8s %12s %12s %8s%n", "benchmark", "mean before", "mean after", "change", "p99 before", "p99 after", "change");
+		for (Map.Entry<String, double[]> entry : current.entrySet())
+		{
+			double[] was = old.get(entry.getKey());
+			if (was == null)
+			{
+				continue;
+			}
+			double[] now = entry.getValue();
+			System.out.printf(Locale.ROOT, "%-28s %12.1f %12.1f %+7.1f%% %12.1f %12.1f %+7.1f%%%n", entry.getKey(),
+				was[0], now[0], 100 * (now[0] - was[0]) / was[0], was[1], now[1], 100 * (now[1] - was[1]) / was[1]);
+		}
+	}
+
+	private static Map<String, double[]> read(File file) throws IOException
+	{
+		Map<String, double[]> results = new LinkedHashMap<String, double[]>();
+		for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8))
+		{
+			Matcher matcher = RESULT_LINE.matcher(line);
+			if (matcher.find())
+			{
+				results.put(matcher.group(1), new double[] { Double.parseDouble(matcher.group(2)), Double.parseDouble(matcher.group(3)) });
+			}
+		}
+		return results;
+	}
+}//end CafeBenchmark
@@ -0,0 +1,206 @@
+/*
+ * Named SQL statements for the Cafe program
+ * =========================================
+ *
+ * Every statement Cafe sends to Postgres is declared here once, with '?'
+ * placeholders instead of values formatted into the SQL text. The
+ * StatementCache prepares each one a single time per connection and
+ * reuses it afterwards, so Postgres parses and plans it only once.
+ */
+
+public enum CafeQuery
+{
+	/*
+	* Menu
+	**/
+	MENU_ITEMS("SELECT itemName, type, price, description, imageURL FROM Menu"),
+	MENU_ITEM("SELECT itemName, type, price, description, imageURL FROM Menu WHERE itemName = ?"),
+	INSERT_MENU_ITEM("INSERT INTO Menu (itemName, type, price, description, imageURL) VALUES (?, ?, ?, ?, ?) "
+		+ "RETURNING itemName, type, price, description, imageURL"),
+	SET_MENU_ITEM_TYPE("UPDATE Menu SET type = ? WHERE itemName = ? "
+		+ "RETURNING itemName, type, price, description, imageURL"),
+	SET_MENU_ITEM_PRICE("UPDATE Menu SET price = ? WHERE itemName = ? "
+		+ "RETURNING itemName, type, price, description, imageURL"),
+	SET_MENU_ITEM_DESCRIPTION("UPDATE Menu SET description = ? WHERE itemName = ? "
+		+ "RETURNING itemName, type, price, description, imageURL"),
+	SET_MENU_ITEM_IMAGE_URL("UPDATE Menu SET imageURL = ? WHERE itemName = ? "
+		+ "RETURNING itemName, type, price, description, imageURL"),
+	DELETE_MENU_ITEM("DELETE FROM Menu WHERE itemName = ?"),
+
+	/*
+	* Orders
+	**/
+	// keyset pages: newest first, starting below the last orderid of the
+	// previous page, so every page costs the same however deep it is
+	ORDER_IDS_PAST_24_HOURS_PAGE("SELECT orderid FROM Orders WHERE timeStampRecieved >= NOW() - '1 day'::INTERVAL "
+		+ "AND orderid < ? ORDER BY orderid DESC LIMIT ?"),
+	UNPAID_ORDER_IDS_PAST_24_HOURS_PAGE("SELECT orderid FROM Orders WHERE timeStampRecieved >= NOW() - '1 day'::INTERVAL AND paid = FALSE "
+		+ "AND orderid < ? ORDER BY orderid DESC LIMIT ?"),
+	ORDER_IDS_BY_LOGIN_PAGE("SELECT orderid FROM Orders WHERE login = ? AND orderid < ? ORDER BY orderid DESC LIMIT ?"),
+	UNPAID_ORDER_IDS_BY_LOGIN_PAGE("SELECT orderid FROM Orders WHERE login = ? AND paid = FALSE AND orderid < ? ORDER BY orderid DESC LIMIT ?"),
+	ORDER_EXISTS("SELECT 1 FROM Orders WHERE orderid = ?"),
+	ORDER_PAID("SELECT paid FROM Orders WHERE orderid = ?"),
+	ORDER_LOGIN("SELECT login FROM Orders WHERE orderid = ?"),
+	ORDER_LOGIN_AND_PAID("SELECT login, paid FROM Orders WHERE orderid = ?"),
+	ORDER_TOTAL("SELECT total FROM Orders WHERE orderid = ?"),
+	ORDER_HEADER("SELECT orderid, login, paid, timeStampRecieved, total FROM Orders WHERE orderid = ?"),
+	// items_total and items_ready are kept by a trigger on ItemStatus
+	ORDER_READY("SELECT items_ready = items_total FROM Orders WHERE orderid = ?"),
+	READY_UNPAID_ORDERS_PAGE("SELECT orderid, login, paid, timeStampRecieved, total FROM Orders "
+		+ "WHERE paid = FALSE AND items_total > 0 AND items_ready = items_total "
+		+ "AND orderid < ? ORDER BY orderid DESC LIMIT ?"),
+	// one page of the 24 hour order board with every item line, in
+	// ORDER_SUMMARY's column order and grouped by orderid, newest first
+	ORDER_BOARD_PAST_24_HOURS_PAGE(orderBoardPage("")),
+	UNPAID_ORDER_BOARD_PAST_24_HOURS_PAGE(orderBoardPage("AND paid = FALSE ")),
+	ORDER_SUMMARY("SELECT Orders.orderid, Orders.login, Orders.paid, Orders.timeStampRecieved, Orders.total, "
+		+ "ItemStatus.itemName, ItemStatus.lastUpdated, ItemStatus.status, ItemStatus.comments, Menu.price, ItemStatus.status = 'Ready' "
+		+ "FROM Orders LEFT JOIN ItemStatus ON ItemStatus.orderid = Orders.orderid "
+		+ "LEFT JOIN Menu ON Menu.itemName = ItemStatus.itemName "
+		+ "WHERE Orders.orderid = ?"),
+	INSERT_ORDER("INSERT INTO Orders (login, paid, timeStampRecieved, total) VALUES (?, FALSE, ?, 0.0) RETURNING orderid"),
+	SUBMIT_CART("WITH cart AS ("
+		+ "SELECT itemName, comments FROM unnest(CAST(? AS text[]), CAST(? AS text[])) AS c(itemName, comments)), "
+		+ "new_order AS ("
+		+ "INSERT INTO Orders (login, paid, timeStampRecieved, total) "
+		+ "SELECT ?, FALSE, CAST(? AS timestamp), COALESCE(SUM(Menu.price), 0) FROM cart JOIN Menu ON Menu.itemName = cart.itemName "
+		+ "RETURNING orderid, login, paid, timeStampRecieved, total), "
+		+ "lines AS ("
+		+ "INSERT INTO ItemStatus (orderid, itemName, lastUpdated, status, comments) "
+		+ "SELECT new_order.orderid, Menu.itemName, CAST(? AS timestamp), 'In progress', cart.comments FROM new_order, cart JOIN Menu ON Menu.itemName = cart.itemName "
+		+ "RETURNING itemName) "
+		+ "SELECT orderid, login, paid, timeStampRecieved, total FROM new_order "
+		+ "WHERE (SELECT COUNT(*) FROM lines) = ?"),
+	SET_ORDER_PAID("UPDATE Orders SET paid = ? WHERE orderid = ?"),
+	DELETE_ORDER("DELETE FROM Orders WHERE orderid = ?"),
+
+	/*
+	* ItemStatus
+	**/
+	ITEM_STATUSES_BY_ORDER("SELECT orderid, itemName, lastUpdated, status, comments FROM ItemStatus WHERE orderid = ?"),
+	ITEM_STATUS_BY_ORDER_AND_ITEM("SELECT orderid, itemName, lastUpdated, status, comments FROM ItemStatus WHERE orderid = ? AND itemName = ?"),
+	ITEM_STATUS_EXISTS("SELECT 1 FROM ItemStatus WHERE orderid = ? AND itemName = ?"),
+	ITEM_STATUS_EXISTS_FOR_ORDER("SELECT 1 FROM ItemStatus WHERE orderid = ? LIMIT 1"),
+	ITEM_STATUS_EXISTS_FOR_ITEM("SELECT 1 FROM ItemStatus WHERE itemName = ? LIMIT 1"),
+	ITEM_STATUS_COMMENT("SELECT comments FROM ItemStatus WHERE orderid = ? AND itemName = ?"),
+	ORDER_IDS_WITH_ITEM("SELECT orderid FROM ItemStatus WHERE itemName = ?"),
+	ADD_ITEM_STATUS_TO_ORDER("WITH added AS ("
+		+ "INSERT INTO ItemStatus (orderid, itemName, lastUpdated, status, comments) "
+		+ "SELECT CAST(? AS integer), itemName, CAST(? AS timestamp), 'In progress', CAST(? AS text) FROM Menu WHERE itemName = ? "
+		+ "RETURNING itemName, comments) "
+		+ "UPDATE Orders SET total = Orders.total + Menu.price "
+		+ "FROM added JOIN Menu ON Menu.itemName = added.itemName "
+		+ "WHERE Orders.orderid = ? "
+		+ "RETURNING Orders.orderid, added.itemName, added.comments, Orders.timeStampRecieved, Orders.total"),
+	INSERT_ITEM_STATUS("INSERT INTO ItemStatus (orderid, itemName, lastUpdated, status, comments) VALUES (?, ?, ?, ?, ?)"),
+	SET_ITEM_STATUS_STATUS("UPDATE ItemStatus SET lastUpdated = ?, status = ? FROM Orders "
+		+ "WHERE ItemStatus.orderid = ? AND ItemStatus.itemName = ? AND Orders.orderid = ItemStatus.orderid "
+		+ "RETURNING ItemStatus.orderid, ItemStatus.itemName, ItemStatus.comments, Orders.timeStampRecieved, ItemStatus.status = 'In progress'"),
+	SET_ITEM_STATUS_COMMENT("UPDATE ItemStatus SET lastUpdated = ?, comments = ? FROM Orders "
+		+ "WHERE ItemStatus.orderid = ? AND ItemStatus.itemName = ? AND Orders.orderid = ItemStatus.orderid "
+		+ "RETURNING ItemStatus.orderid, ItemStatus.itemName, ItemStatus.comments, Orders.timeStampRecieved, ItemStatus.status = 'In progress'"),
+	REMOVE_ITEM_STATUS_FROM_ORDER("WITH removed AS ("
+		+ "DELETE FROM ItemStatus WHERE orderid = ? AND itemName = ? "
+		+ "RETURNING orderid, itemName) "
+		+ "UPDATE Orders SET total = Orders.total - Menu.price "
+		+ "FROM removed JOIN Menu ON Menu.itemName = removed.itemName "
+		+ "WHERE Orders.orderid = removed.orderid "
+		+ "RETURNING Orders.total"),
+	DELETE_ITEM_STATUSES_BY_ORDER("DELETE FROM ItemStatus WHERE orderid = ?"),
+	// removes an item from every order, taking its price off each order's
+	// total, in one set-based statement (migration 005); returns the
+	// number of orders changed
+	REMOVE_ITEM_FROM_ORDERS("SELECT cafe_remove_item_from_orders(?)"),
+
+	/*
+	* Kitchen queue
+	**/
+	KITCHEN_TICKETS("SELECT ItemStatus.orderid, ItemStatus.itemName, ItemStatus.comments, Orders.timeStampRecieved "
+		+ "FROM ItemStatus JOIN Orders ON Orders.orderid = ItemStatus.orderid "
+		+ "WHERE ItemStatus.status = 'In progress'"),
+	KITCHEN_TICKETS_BY_ORDER("SELECT ItemStatus.orderid, ItemStatus.itemName, ItemStatus.comments, Orders.timeStampRecieved "
+		+ "FROM ItemStatus JOIN Orders ON Orders.orderid = ItemStatus.orderid "
+		+ "WHERE ItemStatus.orderid = ? AND ItemStatus.status = 'In progress'"),
+
+	/*
+	* Users
+	**/
+	USER_BY_LOGIN("SELECT login, phoneNum, password, favItems, type FROM Users WHERE login = ?"),
+	USER_BY_LOGIN_AND_PASSWORD("SELECT login, phoneNum, password, favItems, type FROM Users WHERE login = ? AND password = ?"),
+	USER_PASSWORD("SELECT password FROM Users WHERE login = ?"),
+	USER_PHONE_NUMBER("SELECT phoneNum FROM Users WHERE login = ?"),
+	USER_FAV_ITEMS("SELECT favItems FROM Users WHERE login = ?"),
+	USER_TYPE("SELECT type FROM Users WHERE login = ?"),
+	INSERT_USER("INSERT INTO Users (phoneNum, login, password, favItems, type) VALUES (?, ?, ?, ?, ?)"),
+	SET_USER_PASSWORD("UPDATE Users SET password = ? WHERE login = ?"),
+	SET_USER_PHONE_NUMBER("UPDATE Users SET phoneNum = ? WHERE login = ?"),
+	SET_USER_FAV_ITEMS("UPDATE Users SET favItems = ? WHERE login = ?"),
+	SET_USER_TYPE("UPDATE Users SET type = ? WHERE login = ?"),
+
+	/*
+	* Sequences
+	**/
+	SEQUENCE_CURRVAL("SELECT currval(CAST(? AS regclass))"),
+	RESET_ORDER_ID_SEQUENCE("SELECT setval(pg_get_serial_sequence('orders', 'orderid'), COALESCE((SELECT MAX(orderid) FROM Orders), 0) + 1, false)"),
+
+	/*
+	* Schema
+	**/
+	// indexes of a table that do not back a constraint (primary key, unique)
+	SECONDARY_INDEXES("SELECT idx.relname, pg_get_indexdef(idx.oid) FROM pg_index "
+		+ "JOIN pg_class idx ON idx.oid = pg_index.indexrelid "
+		+ "WHERE pg_index.indrelid = CAST(? AS regclass) "
+		+ "AND NOT EXISTS (SELECT 1 FROM pg_constraint WHERE pg_constraint.conindid = pg_index.indexrelid)"),
+	FOREIGN_KEYS("SELECT conname, pg_get_constraintdef(oid) FROM pg_constraint WHERE conrelid = CAST(? AS regclass) AND contype = 'f'"),
+	SCHEMA_VERSIONS("SELECT version FROM schema_version ORDER BY version"),
+	INSERT_SCHEMA_VERSION("INSERT INTO schema_version (version, name) VALUES (?, ?)"),
+
+	/*
+	* Load test, for the users whose login matches a LIKE pattern
+	**/
+	// orders, and orders whose total is not the sum of their items' prices
+	LOAD_TEST_LOST_UPDATES("SELECT COUNT(*), "
+		+ "COUNT(*) FILTER (WHERE ABS(o.total - COALESCE(items.total, 0)) > 0.005) "
+		+ "FROM Orders o LEFT JOIN ("
+		+ "SELECT i.orderid, SUM(m.price) AS total FROM ItemStatus i JOIN Menu m ON m.itemName = i.itemName GROUP BY i.orderid"
+		+ ") items ON items.orderid = o.orderid "
+		+ "WHERE o.login LIKE ?"),
+	LOAD_TEST_DELETE_ITEM_STATUSES("DELETE FROM ItemStatus WHERE orderid IN (SELECT orderid FROM Orders WHERE login LIKE ?)"),
+	LOAD_TEST_DELETE_ORDERS("DELETE FROM Orders WHERE login LIKE ?"),
+	LOAD_TEST_DELETE_USERS("DELETE FROM Users WHERE login LIKE ?");
+
+	private final String sql;
+
+	CafeQuery(String sql)
+	{
+		this.sql = sql;
+	}
+
+	/*
+	* Builds an order board page query that selects a keyset page of
+	* orders from the last 24 hours and joins it to the item lines
+	* @param condition extra Orders predicate, empty or ending in a space
+	* @return sql with the beforeOrderId and pageSize placeholders
+	**/
+	private static String orderBoardPage(String condition)
+	{
+		return "WITH page AS ("
+			+ "SELECT orderid, login, paid, timeStampRecieved, total FROM Orders "
+			+ "WHERE timeStampRecieved >= NOW() - '1 day'::INTERVAL " + condition
+			+ "AND orderid < ? ORDER BY orderid DESC LIMIT ?) "
+			+ "SELECT page.orderid, page.login, page.paid, page.timeStampRecieved, page.total, "
+			+ "ItemStatus.itemName, ItemStatus.lastUpdated, ItemStatus.status, ItemStatus.comments, Menu.price, ItemStatus.status = 'Ready' "
+			+ "FROM page LEFT JOIN ItemStatus ON ItemStatus.orderid = page.orderid "
+			+ "LEFT JOIN Menu ON Menu.itemName = ItemStatus.itemName "
+			+ "ORDER BY page.orderid DESC";
+	}
+
+	/*
+	* Gets the SQL text of the statement
+	* @return sql with '?' placeholders
+	**/
+	public String getSql()
+	{
+		return sql;
+	}
+}//end CafeQuery
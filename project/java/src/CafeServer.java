@@ -0,0 +1,230 @@
+/*
+ * Cafe server
+ * ===========
+ *
+ * Serves the Cafe menus to many people at once over a local TCP socket,
+ * i.e. with "nc 127.0.0.1 <listen port>". Every connection gets its own
+ * Session, run on its own thread (a virtual thread on Java 21+), that
+ * goes through the same menus as the interactive program. All sessions
+ * share one Cafe, so its connection pool and caches serve them together.
+ *
+ * What a session prints is kept in memory and sent to its client when
+ * the session waits for input, so a client that reads slowly holds up
+ * only its own session. A session ends when its client exits the main
+ * menu, hangs up, or is idle for longer than the idle timeout.
+ *
+ * Usage: java CafeServer <dbname> <port> <listen port>
+ * Options (system properties):
+ *   cafe.server.maxSessions         sessions served at once, others are turned away (default 1000)
+ *   cafe.server.idleTimeoutSeconds  idle time before a session is closed (default 600)
+ */
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CafeServer
+{
+	/*
+	* Collects a session's output and sends it to the client on flush()
+	**/
+	private static final class DeferredOutput extends OutputStream
+	{
+		private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		private final OutputStream client;
+
+		DeferredOutput(OutputStream client)
+		{
+			this.client = client;
+		}
+
+		public void write(int b)
+		{
+			buffer.write(b);
+		}
+
+		public void write(byte[] b, int off, int len)
+		{
+			buffer.write(b, off, len);
+		}
+
+		/*
+		* @throws Session.Closed when the client has gone away
+		**/
+		public void flush()
+		{
+			if (buffer.size() == 0)
+			{
+				return;
+			}
+			try
+			{
+				buffer.writeTo(client);
+				client.flush();
+			}
+			catch (IOException e)
+			{
+				throw new Session.Closed();
+			}
+			finally
+			{
+				buffer.reset();
+			}
+		}
+	}
+
+	private final Cafe esql;
+	private final int maxSessions;
+	private final int idleTimeoutMillis;
+
+	private final AtomicInteger active = new AtomicInteger();
+	private final AtomicInteger served = new AtomicInteger();
+
+	public CafeServer(Cafe esql, int maxSessions, int idleTimeoutSeconds)
+	{
+		if (maxSessions < 1 || idleTimeoutSeconds < 0)
+		{
+			throw new IllegalArgumentException("Invalid server options: max sessions " + maxSessions + ", idle timeout " + idleTimeoutSeconds);
+		}
+		this.esql = esql;
+		this.maxSessions = maxSessions;
+		this.idleTimeoutMillis = idleTimeoutSeconds * 1000;
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		if (args.length != 3)
+		{
+			System.err.println("Usage: java CafeServer <dbname> <port> <listen port>");
+			System.exit(2);
+		}
+
+		Class.forName("org.postgresql.Driver");
+		final Cafe esql = new Cafe(args[0], args[1]);
+		Runtime.getRuntime().addShutdownHook(new Thread()
+		{
+			public void run()
+			{
+				esql.cleanup();
+			}
+		});
+
+		CafeServer server = new CafeServer(esql, Integer.getInteger("cafe.server.maxSessions", 1000),
+			Integer.getInteger("cafe.server.idleTimeoutSeconds", 600));
+		server.serve(Integer.parseInt(args[2]));
+	}
+
+	/*
+	* Accepts connections on 127.0.0.1 until the process is stopped
+	* @param port the port to listen on
+	**/
+	public void serve(int port) throws IOException
+	{
+		Session.installStreams();
+		ExecutorService sessions = Session.newExecutor();
+		ServerSocket listener = new ServerSocket(port, 128, InetAddress.getLoopbackAddress());
+		Session.console().printf("Cafe server listening on %s:%d (%s threads, up to %d sessions)%n",
+			listener.getInetAddress().getHostAddress(), listener.getLocalPort(),
+			Session.hasVirtualThreads() ? "virtual" : "platform", maxSessions);
+		try
+		{
+			while (true)
+			{
+				final Socket socket = listener.accept();
+				if (active.incrementAndGet() > maxSessions)
+				{
+					active.decrementAndGet();
+					turnAway(socket);
+					continue;
+				}
+				sessions.execute(new Runnable()
+				{
+					public void run()
+					{
+						try
+						{
+							runSession(socket);
+						}
+						finally
+						{
+							active.decrementAndGet();
+						}
+					}
+				});
+			}
+		}
+		finally
+		{
+			listener.close();
+			sessions.shutdownNow();
+		}
+	}
+
+	/*
+	* Runs the menus for one client until it exits or hangs up
+	**/
+	private void runSession(Socket socket)
+	{
+		int id = served.incrementAndGet();
+		DeferredOutput out = null;
+		try
+		{
+			socket.setSoTimeout(idleTimeoutMillis);
+			socket.setTcpNoDelay(true);
+			out = new DeferredOutput(socket.getOutputStream());
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+			Session.bind(new Session(in, out, out));
+
+			Cafe.Greeting();
+			Cafe.RunMenus(esql);
+			out.flush();
+		}
+		catch (Session.Closed e)
+		{
+			// the client hung up or went idle
+		}
+		catch (IOException | RuntimeException e)
+		{
+			Session.console().println("Session " + id + ": " + e);
+		}
+		finally
+		{
+			Cafe.LogOut(esql);
+			Session.unbind();
+			close(socket);
+		}
+	}
+
+	private static void turnAway(Socket socket)
+	{
+		try
+		{
+			socket.getOutputStream().write("The Cafe is busy, please try again later.\n".getBytes(StandardCharsets.UTF_8));
+		}
+		catch (IOException e)
+		{
+			// closing anyway
+		}
+		close(socket);
+	}
+
+	private static void close(Socket socket)
+	{
+		try
+		{
+			socket.close();
+		}
+		catch (IOException e)
+		{
+			// already gone
+		}
+	}
+}//end CafeServer
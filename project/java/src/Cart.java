@@ -0,0 +1,103 @@
+/*
+ * Items of an order that has not been submitted yet
+ * =================================================
+ *
+ * Collects item names and comments on the client and checks them against
+ * a MenuSnapshot as they are added. Nothing is written to the database
+ * until the cart is submitted with Cafe.SubmitCart.
+ */
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class Cart
+{
+	private final MenuSnapshot menu;
+
+	// comments by item name, in the order the items were added
+	private final Map<String, String> comments = new LinkedHashMap<String, String>();
+
+	private double total = 0;
+
+	public Cart(MenuSnapshot menu)
+	{
+		this.menu = menu;
+	}
+
+	/*
+	* Adds an item to the cart
+	* @param itemName, comment
+	* @return null if added, error message otherwise
+	**/
+	public String add(String itemName, String comment)
+	{
+		MenuItem item = menu.get(itemName);
+
+		if (item == null)
+		{
+			return "Error: " + itemName + " could not be found.\n";
+		}
+		if (comments.containsKey(item.itemName))
+		{
+			return "Error: " + item.itemName + " is already in your order.\n";
+		}
+
+		comments.put(item.itemName, comment == null ? "" : comment);
+		total += item.price;
+		return null;
+	}
+
+	/*
+	* Removes an item from the cart
+	* @param itemName
+	* @return true if the item was in the cart, false otherwise
+	**/
+	public boolean remove(String itemName)
+	{
+		MenuItem item = menu.get(itemName);
+
+		if (item == null || comments.remove(item.itemName) == null)
+		{
+			return false;
+		}
+		total -= item.price;
+		return true;
+	}
+
+	public int size()
+	{
+		return comments.size();
+	}
+
+	public boolean isEmpty()
+	{
+		return comments.isEmpty();
+	}
+
+	/*
+	* Gets the cart total priced from the menu snapshot
+	* @return total
+	**/
+	public double getTotal()
+	{
+		return total;
+	}
+
+	/*
+	* Gets the item names, in the order they were added
+	* @return String[] item names
+	**/
+	public String[] getItemNames()
+	{
+		return comments.keySet().toArray(new String[0]);
+	}
+
+	/*
+	* Gets the comments, in the same order as getItemNames()
+	* @return String[] comments
+	**/
+	public String[] getComments()
+	{
+		return comments.values().toArray(new String[0]);
+	}
+}//end Cart
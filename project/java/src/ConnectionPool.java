@@ -0,0 +1,404 @@
+/*
+ * Database connection pool for the Cafe program
+ * =============================================
+ *
+ * Keeps between minSize and maxSize open connections. Borrowers take an
+ * idle connection (validated first) or open a new one while the pool is
+ * below maxSize, and otherwise wait for one to be released. Connections
+ * idle for longer than idleTimeoutMillis are closed by a background
+ * evictor until only minSize remain.
+ */
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class ConnectionPool
+{
+	// seconds a connection has to answer the validation check on borrow
+	private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+	// connections released more recently than this are handed out without
+	// a validation round trip
+	private static final long VALIDATION_BYPASS_MILLIS = 500;
+
+	private final String url;
+	private final int minSize;
+	private final int maxSize;
+	private final long idleTimeoutMillis;
+	private final long borrowTimeoutMillis;
+
+	// released connections, most recently released first
+	private final Deque<PooledConnection> idle = new ArrayDeque<PooledConnection>();
+
+	// every open connection, idle or borrowed
+	private final List<PooledConnection> all = new ArrayList<PooledConnection>();
+
+	// server process ids of the open connections, read without the lock
+	private final Set<Integer> backendPids = ConcurrentHashMap.newKeySet();
+
+	// closes connections that stay idle for too long
+	private final Timer evictor;
+
+	private boolean closed = false;
+
+	// connections being opened outside the lock, counted against maxSize
+	private int opening = 0;
+
+	// metrics
+	private long borrowCount = 0;
+	private long borrowWaitNanos = 0;
+	private long maxBorrowWaitNanos = 0;
+	private long createdCount = 0;
+	private long failedValidationCount = 0;
+	private long evictedCount = 0;
+
+	/**
+	* Creates the pool and opens minSize connections
+	*
+	* @param url the JDBC connection URL
+	* @param minSize connections kept open even when idle
+	* @param maxSize most connections open at once
+	* @param idleTimeoutMillis how long a connection above minSize may stay idle
+	* @param borrowTimeoutMillis how long borrow waits for a free connection
+	* @throws java.sql.SQLException when failed to open the initial connections
+	*/
+	public ConnectionPool(String url, int minSize, int maxSize, long idleTimeoutMillis, long borrowTimeoutMillis) throws SQLException
+	{
+		if (minSize < 0 || maxSize < 1 || minSize > maxSize)
+		{
+			throw new IllegalArgumentException("Invalid pool size: min " + minSize + ", max " + maxSize);
+		}
+
+		this.url = url;
+		this.minSize = minSize;
+		this.maxSize = maxSize;
+		this.idleTimeoutMillis = idleTimeoutMillis;
+		this.borrowTimeoutMillis = borrowTimeoutMillis;
+
+		for (int i = 0; i < minSize; ++i)
+		{
+			synchronized (this)
+			{
+				++opening;
+			}
+			PooledConnection conn = open();
+			synchronized (this)
+			{
+				idle.push(conn);
+			}
+		}
+
+		this.evictor = new Timer("cafe-pool-evictor", true);
+		long period = Math.max(1000, idleTimeoutMillis / 2);
+		this.evictor.schedule(new TimerTask()
+		{
+			public void run()
+			{
+				evictIdle();
+			}
+		}, period, period);
+	}
+
+	/*
+	* Borrows a connection, waiting up to borrowTimeoutMillis for one
+	* to become free. Idle connections are validated before they are
+	* handed out (unless released within the last VALIDATION_BYPASS_MILLIS)
+	* and replaced if they are no longer usable.
+	* @return pooled connection, must be given back with release()
+	* @throws java.sql.SQLException when no connection could be obtained
+	**/
+	public PooledConnection borrow() throws SQLException
+	{
+		long start = System.nanoTime();
+		long deadline = start + borrowTimeoutMillis * 1000000L;
+
+		while (true)
+		{
+			PooledConnection conn = null;
+
+			synchronized (this)
+			{
+				while (conn == null)
+				{
+					if (closed)
+					{
+						throw new SQLException("Connection pool is closed");
+					}
+
+					conn = idle.poll();
+					if (conn != null || all.size() + opening < maxSize)
+					{
+						break;
+					}
+
+					long remaining = deadline - System.nanoTime();
+					if (remaining <= 0)
+					{
+						throw new SQLException("Timed out after " + borrowTimeoutMillis + " ms waiting for a database connection");
+					}
+					try
+					{
+						wait(remaining / 1000000L + 1);
+					}
+					catch (InterruptedException e)
+					{
+						Thread.currentThread().interrupt();
+						throw new SQLException("Interrupted while waiting for a database connection");
+					}
+				}
+
+				if (conn == null)
+				{
+					++opening;
+				}
+			}
+
+			// opening and validating talk to the server, so they run
+			// without holding the pool lock
+			if (conn == null)
+			{
+				conn = open();
+				recordBorrow(start);
+				return conn;
+			}
+			if (isValid(conn))
+			{
+				recordBorrow(start);
+				return conn;
+			}
+			synchronized (this)
+			{
+				++failedValidationCount;
+				discard(conn);
+				notifyAll();
+			}
+		}
+	}
+
+	/*
+	* Returns a borrowed connection to the pool. An open transaction left
+	* behind by the borrower is rolled back.
+	* @param conn
+	**/
+	public void release(PooledConnection conn)
+	{
+		if (conn == null)
+		{
+			return;
+		}
+
+		boolean usable = true;
+		try
+		{
+			Connection connection = conn.getConnection();
+			if (!connection.getAutoCommit())
+			{
+				connection.rollback();
+				connection.setAutoCommit(true);
+			}
+		}
+		catch (SQLException e)
+		{
+			usable = false;
+		}
+
+		synchronized (this)
+		{
+			if (closed || !usable)
+			{
+				discard(conn);
+			}
+			else
+			{
+				conn.markReleased();
+				idle.push(conn);
+			}
+			notifyAll();
+		}
+	}
+
+	/*
+	* Closes connections above minSize that have been idle longer than
+	* idleTimeoutMillis
+	**/
+	public synchronized void evictIdle()
+	{
+		long cutoff = System.currentTimeMillis() - idleTimeoutMillis;
+
+		Iterator<PooledConnection> oldestFirst = idle.descendingIterator();
+		while (oldestFirst.hasNext() && all.size() > minSize)
+		{
+			PooledConnection conn = oldestFirst.next();
+			if (conn.getLastReleasedMillis() > cutoff)
+			{
+				break;
+			}
+			oldestFirst.remove();
+			discard(conn);
+			++evictedCount;
+		}
+	}
+
+	/*
+	* Gets the number of statements prepared across all pooled connections
+	* @return parsed count
+	**/
+	public synchronized long getParsedCount()
+	{
+		long total = 0;
+		for (PooledConnection conn : all)
+		{
+			total += conn.getStatements().getParsedCount();
+		}
+		return total;
+	}
+
+	/*
+	* Gets the number of executions that reused a prepared statement
+	* across all pooled connections
+	* @return reused count
+	**/
+	public synchronized long getReusedCount()
+	{
+		long total = 0;
+		for (PooledConnection conn : all)
+		{
+			total += conn.getStatements().getReusedCount();
+		}
+		return total;
+	}
+
+	/*
+	* Gets the number of server-side prepared statements held by the
+	* sessions of the idle connections
+	* @return server-side prepared count
+	**/
+	public synchronized long getServerPreparedCount()
+	{
+		long total = 0;
+		for (PooledConnection conn : idle)
+		{
+			total += Math.max(0, conn.getStatements().getServerPreparedCount());
+		}
+		return total;
+	}
+
+	/*
+	* Prints pool size and borrow latency metrics
+	**/
+	public synchronized void printStatistics()
+	{
+		double averageMicros = borrowCount == 0 ? 0 : borrowWaitNanos / 1000.0 / borrowCount;
+
+		System.out.println("Connections open: " + all.size() + " (idle " + idle.size()
+			+ ", min " + minSize + ", max " + maxSize + "), created: " + createdCount
+			+ ", evicted: " + evictedCount + ", failed validation: " + failedValidationCount);
+		System.out.printf("Connections borrowed: %d, average wait: %.1f us, max wait: %.1f us%n",
+			borrowCount, averageMicros, maxBorrowWaitNanos / 1000.0);
+	}
+
+	/*
+	* Closes every idle connection and stops the evictor. Connections still
+	* borrowed are closed when they are released.
+	**/
+	public synchronized void close()
+	{
+		closed = true;
+		evictor.cancel();
+
+		while (!idle.isEmpty())
+		{
+			discard(idle.poll());
+		}
+		notifyAll();
+	}
+
+	/*
+	* Determines if pid is the server process of one of the pool's open
+	* connections (i.e. the sender of a notification)
+	**/
+	public boolean isOwnBackend(int pid)
+	{
+		return backendPids.contains(pid);
+	}
+
+	/*
+	* Opens a new connection for a slot reserved by incrementing opening
+	* @return pooled connection, already counted in all
+	**/
+	private PooledConnection open() throws SQLException
+	{
+		try
+		{
+			Connection connection = DriverManager.getConnection(url);
+			PooledConnection conn;
+			try
+			{
+				conn = new PooledConnection(connection);
+			}
+			catch (SQLException e)
+			{
+				connection.close();
+				throw e;
+			}
+
+			synchronized (this)
+			{
+				all.add(conn);
+				backendPids.add(conn.getBackendPid());
+				++createdCount;
+			}
+			return conn;
+		}
+		finally
+		{
+			synchronized (this)
+			{
+				--opening;
+				notifyAll();
+			}
+		}
+	}
+
+	private void discard(PooledConnection conn)
+	{
+		all.remove(conn);
+		backendPids.remove(conn.getBackendPid());
+		conn.close();
+	}
+
+	private boolean isValid(PooledConnection conn)
+	{
+		if (System.currentTimeMillis() - conn.getLastReleasedMillis() < VALIDATION_BYPASS_MILLIS)
+		{
+			return true;
+		}
+		try
+		{
+			return conn.getConnection().isValid(VALIDATION_TIMEOUT_SECONDS);
+		}
+		catch (SQLException e)
+		{
+			return false;
+		}
+	}
+
+	private synchronized void recordBorrow(long startNanos)
+	{
+		long waited = System.nanoTime() - startNanos;
+
+		++borrowCount;
+		borrowWaitNanos += waited;
+		maxBorrowWaitNanos = Math.max(maxBorrowWaitNanos, waited);
+	}
+}//end ConnectionPool
@@ -0,0 +1,447 @@
+/*
+ * Synthetic Cafe data generator
+ * =============================
+ *
+ * Writes users.csv, orders.csv and itemStatus.csv in the ';' separated
+ * COPY text format BulkLoader reads, consistent with an existing
+ * menu.csv (which is copied next to them). The output only depends on
+ * the seed, the options and the end of the history, so two runs with the
+ * same seed, options and cafe.gen.end write the same files. The end
+ * defaults to the current minute, so that the newest orders are recent;
+ * it is printed, and passing it back repeats a run.
+ *
+ * The data is shaped like a cafe's history: orders cluster around the
+ * breakfast, lunch and afternoon rushes and are lighter on weekends, a
+ * minority of regulars place most of the orders, popular items are
+ * ordered far more often than the rest, and only recent orders are
+ * still in progress. Files are streamed and only one day's order times
+ * are held in memory, so the same run scales from 10k to 100M orders.
+ *
+ * Usage: java DataGenerator <menu.csv> <output dir> <orders>
+ * Options (system properties):
+ *   cafe.gen.seed         random seed (default 166)
+ *   cafe.gen.days         days of history (default 90)
+ *   cafe.gen.users        customers (default orders / 20, at least 100)
+ *   cafe.gen.unpaidRatio  share of orders left unpaid (default 0.05)
+ *   cafe.gen.end          end of the history, yyyy-MM-ddTHH:mm (default now)
+ */
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+public class DataGenerator
+{
+	// rushes as (hour of day, spread in hours, share of the day's orders);
+	// the remaining share is spread evenly over opening hours
+	private static final double[][] RUSHES = { { 8.0, 0.9, 0.35 }, { 12.5, 0.8, 0.30 }, { 15.5, 1.0, 0.15 } };
+	private static final double OPENS_AT_HOUR = 6.0;
+	private static final double CLOSES_AT_HOUR = 21.0;
+
+	// orders placed on a Saturday or Sunday, relative to a weekday
+	private static final double WEEKEND_FACTOR = 0.7;
+
+	// cumulative chance of an order having 1, 2, 3, 4 or 5 items
+	private static final double[] ITEMS_PER_ORDER = { 0.35, 0.65, 0.85, 0.95, 1.0 };
+
+	// orders newer than this (before the end) may still be in progress
+	private static final long IN_PROGRESS_SECONDS = 30 * 60;
+
+	private static final double COMMENT_RATIO = 0.1;
+	private static final String[] COMMENTS = { "extra hot", "no sugar", "oat milk", "to go", "light ice", "warmed up", "no whip", "extra shot" };
+
+	// share of users that are employees and managers
+	private static final double EMPLOYEE_RATIO = 0.01;
+	private static final double MANAGER_RATIO = 0.001;
+
+	private final SplittableRandom random;
+	private final List<String> itemNames = new ArrayList<String>();
+	private final List<Long> itemCents = new ArrayList<Long>();
+
+	// menu item indexes, most popular first
+	private int[] popularity;
+
+	private final int users;
+	private final double unpaidRatio;
+
+	// counts
+	private long orderRows = 0;
+	private long itemStatusRows = 0;
+
+	public DataGenerator(long seed, int users, double unpaidRatio)
+	{
+		this.random = new SplittableRandom(seed);
+		this.users = users;
+		this.unpaidRatio = unpaidRatio;
+	}
+
+	public static void main(String[] args) throws IOException
+	{
+		if (args.length != 3)
+		{
+			System.err.println("Usage: java DataGenerator <menu.csv> <output dir> <orders>");
+			System.exit(2);
+		}
+		File menu = new File(args[0]);
+		File directory = new File(args[1]);
+		long orders = Long.parseLong(args[2]);
+		if (orders < 1 || orders > Integer.MAX_VALUE)
+		{
+			throw new IllegalArgumentException("Orders must be between 1 and " + Integer.MAX_VALUE + ": " + orders);
+		}
+
+		long seed = Long.getLong("cafe.gen.seed", 166L);
+		int days = Integer.getInteger("cafe.gen.days", 90);
+		int users = Integer.getInteger("cafe.gen.users", (int) Math.max(100, orders / 20));
+		double unpaidRatio = Double.parseDouble(System.getProperty("cafe.gen.unpaidRatio", "0.05"));
+		String end = System.getProperty("cafe.gen.end");
+		LocalDateTime endTime = end != null ? LocalDateTime.parse(end) : LocalDateTime.now().truncatedTo(ChronoUnit.MINUTES);
+
+		long start = System.nanoTime();
+		DataGenerator generator = new DataGenerator(seed, users, unpaidRatio);
+		generator.readMenu(menu);
+
+		directory.mkdirs();
+		Files.copy(menu.toPath(), new File(directory, "menu.csv").toPath(), StandardCopyOption.REPLACE_EXISTING);
+		generator.writeUsers(new File(directory, "users.csv"));
+		generator.writeOrders(new File(directory, "orders.csv"), new File(directory, "itemStatus.csv"), orders, days, endTime);
+
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.printf("Wrote %d users, %d orders and %d item statuses to %s in %.1f s%n",
+			users, generator.orderRows, generator.itemStatusRows, directory, seconds);
+		System.out.printf("History ends at %s (repeat with -Dcafe.gen.seed=%d -Dcafe.gen.end=%s)%n", endTime, seed, endTime);
+	}
+
+	/*
+	* Reads item names and prices from menu.csv and ranks the items by a
+	* seeded random popularity
+	**/
+	public void readMenu(File menu) throws IOException
+	{
+		BufferedReader reader = Files.newBufferedReader(menu.toPath(), StandardCharsets.UTF_8);
+		try
+		{
+			String line;
+			while ((line = reader.readLine()) != null)
+			{
+				String[] fields = line.split(";", -1);
+				if (fields.length < 3)
+				{
+					continue;
+				}
+				itemNames.add(fields[0]);
+				itemCents.add(Math.round(Double.parseDouble(fields[2]) * 100));
+			}
+		}
+		finally
+		{
+			reader.close();
+		}
+		if (itemNames.isEmpty())
+		{
+			throw new IOException("No menu items in " + menu);
+		}
+
+		popularity = new int[itemNames.size()];
+		for (int i = 0; i < popularity.length; ++i)
+		{
+			popularity[i] = i;
+		}
+		for (int i = popularity.length - 1; i > 0; --i)
+		{
+			int j = random.nextInt(i + 1);
+			int swap = popularity[i];
+			popularity[i] = popularity[j];
+			popularity[j] = swap;
+		}
+	}
+
+	/*
+	* Writes the users: mostly customers, a few employees and managers
+	**/
+	public void writeUsers(File file) throws IOException
+	{
+		Writer out = open(file);
+		try
+		{
+			StringBuilder row = new StringBuilder(128);
+			int[] chosen = new int[2];
+			for (int i = 0; i < users; ++i)
+			{
+				row.setLength(0);
+				row.append(login(i)).append(';');
+				appendPhone(row, i);
+				row.append(";pw").append(i).append(';');
+
+				int favorites = Math.min(random.nextInt(3), itemNames.size());
+				for (int f = 0; f < favorites; ++f)
+				{
+					if (f > 0)
+					{
+						row.append(',');
+					}
+					row.append(itemNames.get(pickDistinctItem(chosen, f)).toLowerCase());
+				}
+
+				double type = random.nextDouble();
+				if (type < MANAGER_RATIO)
+				{
+					row.append(";Manager\n");
+				}
+				else if (type < MANAGER_RATIO + EMPLOYEE_RATIO)
+				{
+					row.append(";Employee\n");
+				}
+				else
+				{
+					row.append(";Customer\n");
+				}
+				out.write(row.toString());
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	/*
+	* Writes the orders and their item statuses, oldest first, so orderid
+	* grows with the time the order was received
+	**/
+	public void writeOrders(File ordersFile, File itemStatusFile, long orders, int days, LocalDateTime end) throws IOException
+	{
+		LocalDate firstDay = end.toLocalDate().minusDays(days - 1);
+		long endSecond = end.toLocalTime().toSecondOfDay();
+
+		// orders per day, weekends lighter, today only the opening hours
+		// up to end
+		double[] weights = new double[days];
+		double totalWeight = 0;
+		for (int d = 0; d < days; ++d)
+		{
+			DayOfWeek day = firstDay.plusDays(d).getDayOfWeek();
+			weights[d] = day == DayOfWeek.SATURDAY || day == DayOfWeek.SUNDAY ? WEEKEND_FACTOR : 1.0;
+			totalWeight += weights[d];
+		}
+		double openToday = (endSecond / 3600.0 - OPENS_AT_HOUR) / (CLOSES_AT_HOUR - OPENS_AT_HOUR);
+		double todayWeight = weights[days - 1] * Math.max(0, Math.min(1, openToday));
+		totalWeight += todayWeight - weights[days - 1];
+		weights[days - 1] = todayWeight;
+		if (totalWeight <= 0)
+		{
+			throw new IllegalArgumentException("No opening hours before " + end);
+		}
+
+		Writer orderOut = open(ordersFile);
+		Writer itemOut = open(itemStatusFile);
+		try
+		{
+			StringBuilder orderRow = new StringBuilder(128);
+			StringBuilder itemRows = new StringBuilder(512);
+			int[] chosen = new int[ITEMS_PER_ORDER.length];
+			double weightSoFar = 0;
+			long placed = 0;
+			long orderId = 0;
+			long nextReport = 1000000;
+
+			for (int d = 0; d < days; ++d)
+			{
+				// rounded from the running total, so the days add up to orders
+				weightSoFar += weights[d];
+				long dayOrders = (d == days - 1 ? orders : Math.round(orders * weightSoFar / totalWeight)) - placed;
+				placed += dayOrders;
+
+				boolean today = d == days - 1;
+				long[] seconds = timesOfDay(dayOrders, today ? endSecond : 24 * 3600);
+				String date = firstDay.plusDays(d).toString();
+
+				for (long second : seconds)
+				{
+					++orderId;
+					boolean recent = today && endSecond - second < IN_PROGRESS_SECONDS;
+
+					int itemCount = itemCount();
+					long totalCents = 0;
+					itemRows.setLength(0);
+					for (int i = 0; i < itemCount; ++i)
+					{
+						int item = pickDistinctItem(chosen, i);
+						totalCents += itemCents.get(item);
+
+						itemRows.append(orderId).append(';').append(itemNames.get(item)).append(';');
+						appendTimestamp(itemRows, date, Math.min(second + 60 + random.nextInt(600), 24 * 3600 - 1));
+						itemRows.append(recent && random.nextBoolean() ? ";In progress;" : ";Ready;");
+						if (random.nextDouble() < COMMENT_RATIO)
+						{
+							itemRows.append(COMMENTS[random.nextInt(COMMENTS.length)]);
+						}
+						itemRows.append('\n');
+					}
+
+					boolean paid = !recent && random.nextDouble() >= unpaidRatio;
+					orderRow.setLength(0);
+					orderRow.append(orderId).append(';').append(login(pickCustomer())).append(';').append(paid ? 't' : 'f').append(';');
+					appendTimestamp(orderRow, date, second);
+					orderRow.append(';').append(totalCents / 100).append('.');
+					long cents = totalCents % 100;
+					orderRow.append(cents < 10 ? "0" : "").append(cents).append('\n');
+
+					orderOut.write(orderRow.toString());
+					itemOut.write(itemRows.toString());
+					orderRows += 1;
+					itemStatusRows += itemCount;
+				}
+				if (orderId >= nextReport)
+				{
+					System.out.println("... " + orderId + " orders");
+					nextReport += 1000000;
+				}
+			}
+		}
+		finally
+		{
+			orderOut.close();
+			itemOut.close();
+		}
+	}
+
+	/*
+	* Draws count times of day, in seconds and sorted, from the rushes and
+	* the opening hours
+	* @param limit latest second of the day allowed (exclusive)
+	**/
+	private long[] timesOfDay(long count, long limit)
+	{
+		long[] seconds = new long[(int) count];
+		long open = (long) (OPENS_AT_HOUR * 3600);
+		long close = Math.min((long) (CLOSES_AT_HOUR * 3600), limit);
+
+		for (int i = 0; i < seconds.length; ++i)
+		{
+			double hour = -1;
+			double pick = random.nextDouble();
+			for (double[] rush : RUSHES)
+			{
+				if (pick < rush[2])
+				{
+					hour = rush[0] + gaussian() * rush[1];
+					break;
+				}
+				pick -= rush[2];
+			}
+			long second = hour < 0 ? -1 : (long) (hour * 3600);
+			if (second < open || second >= close)
+			{
+				// quiet period, or a rush time outside the opening hours
+				second = open + (long) (random.nextDouble() * (close - open));
+			}
+			seconds[i] = second;
+		}
+		Arrays.sort(seconds);
+		return seconds;
+	}
+
+	private int itemCount()
+	{
+		double pick = random.nextDouble();
+		int count = 1;
+		while (count < ITEMS_PER_ORDER.length && pick >= ITEMS_PER_ORDER[count - 1])
+		{
+			++count;
+		}
+		return Math.min(count, itemNames.size());
+	}
+
+	/*
+	* Picks a menu item, skewed towards the popular ones: the i-th most
+	* popular item is picked about twice as often as the 2i-th
+	**/
+	private int pickItem()
+	{
+		return popularity[(int) (popularity.length * Math.pow(random.nextDouble(), 2.0))];
+	}
+
+	private int pickDistinctItem(int[] chosen, int count)
+	{
+		while (true)
+		{
+			int item = pickItem();
+			boolean duplicate = false;
+			for (int i = 0; i < count; ++i)
+			{
+				duplicate |= chosen[i] == item;
+			}
+			if (!duplicate)
+			{
+				chosen[count] = item;
+				return item;
+			}
+		}
+	}
+
+	/*
+	* Picks a customer, skewed towards the regulars with the low numbers:
+	* the top 10% of customers place about half the orders
+	**/
+	private int pickCustomer()
+	{
+		return (int) (users * Math.pow(random.nextDouble(), 3.3));
+	}
+
+	private double gaussian()
+	{
+		// Box-Muller, one value per call
+		double u = 1.0 - random.nextDouble();
+		return Math.sqrt(-2 * Math.log(u)) * Math.cos(2 * Math.PI * random.nextDouble());
+	}
+
+	private static String login(int user)
+	{
+		return "user" + user;
+	}
+
+	// +1(AAA)BBB-CCCC from the user number, unique for up to 10^10 users
+	private static void appendPhone(StringBuilder row, long user)
+	{
+		String digits = String.valueOf(10000000000L + user).substring(1);
+		row.append("+1(").append(digits, 0, 3).append(')').append(digits, 3, 6).append('-').append(digits, 6, 10);
+	}
+
+	private static void appendTimestamp(StringBuilder row, String date, long second)
+	{
+		row.append(date).append(' ');
+		appendTwoDigits(row, second / 3600);
+		row.append(':');
+		appendTwoDigits(row, second / 60 % 60);
+		row.append(':');
+		appendTwoDigits(row, second % 60);
+	}
+
+	private static void appendTwoDigits(StringBuilder row, long value)
+	{
+		if (value < 10)
+		{
+			row.append('0');
+		}
+		row.append(value);
+	}
+
+	private static Writer open(File file) throws IOException
+	{
+		return new BufferedWriter(Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8), 1 << 16);
+	}
+}//end DataGenerator
@@ -0,0 +1,84 @@
+/*
+ * Growable list of primitive ints
+ * ===============================
+ *
+ * Holds order ids in an int[] so id lists do not box every value into
+ * an Integer.
+ */
+
+import java.util.Arrays;
+
+public class IntList
+{
+	private int[] values;
+	private int size = 0;
+
+	public IntList()
+	{
+		this(16);
+	}
+
+	public IntList(int initialCapacity)
+	{
+		values = new int[Math.max(1, initialCapacity)];
+	}
+
+	/*
+	* Appends value to the end of the list
+	* @param value
+	**/
+	public void add(int value)
+	{
+		if (size == values.length)
+		{
+			values = Arrays.copyOf(values, size * 2);
+		}
+		values[size++] = value;
+	}
+
+	/*
+	* Gets the value at index
+	* @param index
+	* @return value
+	**/
+	public int get(int index)
+	{
+		if (index < 0 || index >= size)
+		{
+			throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+		}
+		return values[index];
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	/*
+	* Sorts the values in ascending order
+	**/
+	public void sort()
+	{
+		Arrays.sort(values, 0, size);
+	}
+
+	/*
+	* Copies the values into an array of exactly size() elements
+	* @return int[] of the values
+	**/
+	public int[] toArray()
+	{
+		return Arrays.copyOf(values, size);
+	}
+
+	public String toString()
+	{
+		return Arrays.toString(toArray());
+	}
+}//end IntList
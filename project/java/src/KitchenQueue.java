@@ -0,0 +1,223 @@
+/*
+ * Kitchen display queue
+ * =====================
+ *
+ * Every "In progress" ItemStatus line, oldest order first, held in memory
+ * so the next items to prepare are listed without a database round trip.
+ * The queue is loaded with one query when it is first shown. After that
+ * the Cafe helpers that add, finish or remove order items update it once
+ * their change has committed (see Cafe.itemStatusChanged), and the
+ * change notifications of other processes reload the orders they touched.
+ *
+ * Readers walk a skip list ordered by KitchenTicket.ORDER without taking
+ * a lock, so listing the next N items costs O(N). Writers are serialized
+ * and also keep an index by order, so an order can be replaced or
+ * removed without scanning the queue.
+ */
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+public final class KitchenQueue
+{
+	private final ConcurrentSkipListSet<KitchenTicket> tickets = new ConcurrentSkipListSet<KitchenTicket>(KitchenTicket.ORDER);
+
+	// tickets by orderid and item name, guarded by this
+	private final Map<Integer, Map<String, KitchenTicket>> byOrder = new HashMap<Integer, Map<String, KitchenTicket>>();
+
+	// false until loaded, and again after invalidate(); changes made
+	// meanwhile are left to the next load
+	private volatile boolean loaded = false;
+
+	private volatile int size = 0;
+
+	/*
+	* Loads every in progress line unless the queue is already loaded
+	* @throws java.sql.SQLException when failed to read them
+	**/
+	public synchronized void load(Cafe esql) throws SQLException
+	{
+		if (loaded)
+		{
+			return;
+		}
+		for (KitchenTicket ticket : esql.executeQueryAndMapResult(CafeQuery.KITCHEN_TICKETS, KitchenTicket.MAPPER))
+		{
+			put(ticket);
+		}
+		loaded = true;
+	}
+
+	/*
+	* Reads the in progress lines of one order again, after another
+	* process changed them. Does nothing until the queue is loaded.
+	* @throws java.sql.SQLException when failed to read them
+	**/
+	public void reloadOrder(Cafe esql, int orderId) throws SQLException
+	{
+		if (!loaded)
+		{
+			return;
+		}
+		List<KitchenTicket> current = esql.executeQueryAndMapResult(CafeQuery.KITCHEN_TICKETS_BY_ORDER, KitchenTicket.MAPPER, orderId);
+		synchronized (this)
+		{
+			if (loaded)
+			{
+				removeOrder(orderId);
+				for (KitchenTicket ticket : current)
+				{
+					put(ticket);
+				}
+			}
+		}
+	}
+
+	/*
+	* Drops the queue; the next load reads it again
+	**/
+	public synchronized void invalidate()
+	{
+		loaded = false;
+		tickets.clear();
+		byOrder.clear();
+		size = 0;
+	}
+
+	public boolean isLoaded()
+	{
+		return loaded;
+	}
+
+	/*
+	* Gets the next items to prepare, oldest order first
+	* @param count how many at most
+	* @return List<KitchenTicket> of up to count tickets
+	**/
+	public List<KitchenTicket> next(int count)
+	{
+		List<KitchenTicket> next = new ArrayList<KitchenTicket>(Math.min(count, size));
+		Iterator<KitchenTicket> it = tickets.iterator();
+		while (next.size() < count && it.hasNext())
+		{
+			next.add(it.next());
+		}
+		return next;
+	}
+
+	/*
+	* Gets how many items are in progress
+	**/
+	public int size()
+	{
+		return size;
+	}
+
+	/*
+	* Records an order line as written
+	* @param ticket the line if it is in progress, null if it is ready or
+	*        was deleted
+	**/
+	public synchronized void changed(int orderId, String itemName, KitchenTicket ticket)
+	{
+		if (!loaded)
+		{
+			return;
+		}
+		remove(orderId, itemName.trim());
+		if (ticket != null)
+		{
+			put(ticket);
+		}
+	}
+
+	/*
+	* Removes every line of an order
+	**/
+	public synchronized void orderDeleted(int orderId)
+	{
+		if (loaded)
+		{
+			removeOrder(orderId);
+		}
+	}
+
+	/*
+	* Removes an item from every order
+	**/
+	public synchronized void itemDeleted(String itemName)
+	{
+		if (!loaded)
+		{
+			return;
+		}
+		String name = itemName.trim();
+		Iterator<Map<String, KitchenTicket>> orders = byOrder.values().iterator();
+		while (orders.hasNext())
+		{
+			Map<String, KitchenTicket> items = orders.next();
+			KitchenTicket ticket = items.remove(name);
+			if (ticket != null)
+			{
+				tickets.remove(ticket);
+				--size;
+				if (items.isEmpty())
+				{
+					orders.remove();
+				}
+			}
+		}
+	}
+
+	private void put(KitchenTicket ticket)
+	{
+		Map<String, KitchenTicket> items = byOrder.get(ticket.orderId);
+		if (items == null)
+		{
+			items = new LinkedHashMap<String, KitchenTicket>();
+			byOrder.put(ticket.orderId, items);
+		}
+		KitchenTicket old = items.put(ticket.itemName, ticket);
+		if (old != null)
+		{
+			tickets.remove(old);
+			--size;
+		}
+		tickets.add(ticket);
+		++size;
+	}
+
+	private void remove(int orderId, String itemName)
+	{
+		Map<String, KitchenTicket> items = byOrder.get(orderId);
+		KitchenTicket old = items != null ? items.remove(itemName) : null;
+		if (old != null)
+		{
+			tickets.remove(old);
+			--size;
+			if (items.isEmpty())
+			{
+				byOrder.remove(orderId);
+			}
+		}
+	}
+
+	private void removeOrder(int orderId)
+	{
+		Map<String, KitchenTicket> items = byOrder.remove(orderId);
+		if (items != null)
+		{
+			for (KitchenTicket ticket : items.values())
+			{
+				tickets.remove(ticket);
+			}
+			size -= items.size();
+		}
+	}
+}//end KitchenQueue
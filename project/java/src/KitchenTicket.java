@@ -0,0 +1,73 @@
+/*
+ * One item the kitchen still has to prepare
+ * =========================================
+ *
+ * An "In progress" row of ItemStatus together with when its order came
+ * in, which decides its place in the KitchenQueue.
+ */
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Comparator;
+
+public final class KitchenTicket
+{
+	/*
+	* Maps a row of (orderid, itemName, comments, timeStampRecieved).
+	* The char(n) columns are trimmed of their padding.
+	**/
+	public static final RowMapper<KitchenTicket> MAPPER = new RowMapper<KitchenTicket>()
+	{
+		public KitchenTicket mapRow(ResultSet rs) throws SQLException
+		{
+			return new KitchenTicket(rs.getInt(1), trim(rs.getString(2)), trim(rs.getString(3)), rs.getTimestamp(4));
+		}
+	};
+
+	/*
+	* Maps a row of (orderid, itemName, comments, timeStampRecieved,
+	* in progress) to a ticket, or to null when the line is not in progress
+	**/
+	public static final RowMapper<KitchenTicket> IN_PROGRESS_MAPPER = new RowMapper<KitchenTicket>()
+	{
+		public KitchenTicket mapRow(ResultSet rs) throws SQLException
+		{
+			return rs.getBoolean(5) ? MAPPER.mapRow(rs) : null;
+		}
+	};
+
+	/*
+	* Oldest order first; the items of one order by name
+	**/
+	public static final Comparator<KitchenTicket> ORDER = new Comparator<KitchenTicket>()
+	{
+		public int compare(KitchenTicket a, KitchenTicket b)
+		{
+			int c = a.timeStampRecieved.compareTo(b.timeStampRecieved);
+			if (c == 0)
+			{
+				c = Integer.compare(a.orderId, b.orderId);
+			}
+			return c != 0 ? c : a.itemName.compareTo(b.itemName);
+		}
+	};
+
+	public final int orderId;
+	public final String itemName;
+	public final String comments;
+	public final Timestamp timeStampRecieved;
+
+	public KitchenTicket(int orderId, String itemName, String comments, Timestamp timeStampRecieved)
+	{
+		this.orderId = orderId;
+		this.itemName = itemName;
+		this.comments = comments;
+		this.timeStampRecieved = timeStampRecieved;
+	}
+
+	private static String trim(String value)
+	{
+		return value == null ? null : value.trim();
+	}
+}//end KitchenTicket
@@ -0,0 +1,562 @@
+/*
+ * Concurrent load test of the Cafe order flows
+ * ============================================
+ *
+ * Runs N sessions at once, each driving the same menu operations a person
+ * at a register or kiosk would: CreateUser, LogIn, AddOrder, UpdateOrder,
+ * EmployeeUpdateOrder and ViewOrderStatus. The operations are the real
+ * Cafe methods, run in a Session of their own that is fed the operation's
+ * scripted keyboard input and captures what it prints. An operation
+ * counts as an error when it prints an "Error" message or anything to
+ * System.err, or asks for more input than scripted.
+ *
+ * Customer sessions create a user, then repeatedly log in, add an order,
+ * view it and update it (add an item and remove it again). Employee
+ * sessions log in once, then add and remove an item on an order a
+ * customer is editing at that moment, and mark the orders customers are
+ * done with as paid. Every order is therefore written by two people at
+ * once. When the run is over each order's total is compared with the sum
+ * of its items' prices; an order whose total does not match has lost an
+ * update, and the run exits with status 1.
+ *
+ * With cafe.loadtest.hotOrder every employee edits the order of the
+ * first customer session instead of a random one, so all of them write
+ * the same Orders row at once; each employee adds a different item, so
+ * there can be at most as many employees as half the menu.
+ *
+ * Sessions run on virtual threads when the JVM has them (Java 21+), on
+ * platform threads otherwise (see Session.newExecutor). They share the Cafe connection pool, size
+ * it with -Dcafe.pool.max. The users and orders created are deleted at
+ * the end of the run.
+ *
+ * Usage: java LoadTest <dbname> <port> <sessions> <employee login> <employee password>
+ * Options (system properties):
+ *   cafe.loadtest.seconds     length of the run (default 30)
+ *   cafe.loadtest.thinkMillis mean pause between operations (default 200)
+ *   cafe.loadtest.employees   sessions that are employees (default sessions / 5, at least 1)
+ *   cafe.loadtest.hotOrder    true to have every employee edit the same order
+ *   cafe.loadtest.keep        true to keep the created users and orders
+ */
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class LoadTest
+{
+	private static final String[] OPERATIONS = { "CreateUser", "LogIn", "AddOrder", "UpdateOrder", "EmployeeUpdateOrder", "ViewOrderStatus" };
+
+	// error messages kept for the report
+	private static final int MAX_ERROR_MESSAGES = 10;
+
+	// what the running session's operations print
+	private static final ThreadLocal<ByteArrayOutputStream> OUT = new ThreadLocal<ByteArrayOutputStream>()
+	{
+		protected ByteArrayOutputStream initialValue()
+		{
+			return new ByteArrayOutputStream();
+		}
+	};
+	private static final ThreadLocal<ByteArrayOutputStream> ERR = new ThreadLocal<ByteArrayOutputStream>()
+	{
+		protected ByteArrayOutputStream initialValue()
+		{
+			return new ByteArrayOutputStream();
+		}
+	};
+
+	/*
+	* Latencies and errors of the operations one session ran
+	**/
+	private static final class Recorder
+	{
+		final Map<String, long[]> nanos = new LinkedHashMap<String, long[]>();
+		final Map<String, int[]> counts = new LinkedHashMap<String, int[]>();
+		final Map<String, int[]> errors = new LinkedHashMap<String, int[]>();
+
+		Recorder()
+		{
+			for (String operation : OPERATIONS)
+			{
+				nanos.put(operation, new long[64]);
+				counts.put(operation, new int[1]);
+				errors.put(operation, new int[1]);
+			}
+		}
+
+		void record(String operation, long elapsed, boolean failed)
+		{
+			int[] count = counts.get(operation);
+			long[] latencies = nanos.get(operation);
+			if (count[0] == latencies.length)
+			{
+				latencies = Arrays.copyOf(latencies, count[0] * 2);
+				nanos.put(operation, latencies);
+			}
+			latencies[count[0]++] = elapsed;
+			if (failed)
+			{
+				errors.get(operation)[0]++;
+			}
+		}
+
+		long[] latencies(String operation)
+		{
+			return Arrays.copyOf(nanos.get(operation), counts.get(operation)[0]);
+		}
+	}
+
+	private final Cafe esql;
+	private final String employeeLogin;
+	private final String employeePassword;
+	private final long thinkMillis;
+	private final boolean hotOrder;
+
+	// menu items customers order and items employees add, kept apart so
+	// the two never insert the same ItemStatus row into one order
+	private final List<String> customerItems = new ArrayList<String>();
+	private final List<String> employeeItems = new ArrayList<String>();
+
+	// logins of this run are <prefix><session>
+	private final String loginPrefix;
+	private final long runId;
+
+	// order each customer session is editing, 0 when none
+	private final AtomicInteger[] openOrders;
+
+	// orders customers are done with, waiting to be paid
+	private final ConcurrentLinkedQueue<Integer> closedOrders = new ConcurrentLinkedQueue<Integer>();
+
+	private final ConcurrentHashMap<String, AtomicInteger> errorMessages = new ConcurrentHashMap<String, AtomicInteger>();
+
+	private volatile long deadline;
+
+	public LoadTest(Cafe esql, int customers, String employeeLogin, String employeePassword, long thinkMillis) throws java.sql.SQLException
+	{
+		this.esql = esql;
+		this.employeeLogin = employeeLogin;
+		this.employeePassword = employeePassword;
+		this.thinkMillis = thinkMillis;
+		this.hotOrder = Boolean.getBoolean("cafe.loadtest.hotOrder");
+
+		this.runId = System.currentTimeMillis() / 1000 % 100000000L;
+		this.loginPrefix = "lt" + runId + "-";
+
+		this.openOrders = new AtomicInteger[customers];
+		for (int i = 0; i < customers; ++i)
+		{
+			openOrders[i] = new AtomicInteger();
+		}
+
+		int i = 0;
+		for (MenuItem item : MenuSnapshot.load(esql).items())
+		{
+			(i++ % 2 == 0 ? customerItems : employeeItems).add(MenuSnapshot.key(item.itemName));
+		}
+		if (customerItems.size() < 3 || employeeItems.isEmpty())
+		{
+			throw new IllegalStateException("The menu needs at least 4 items, it has " + i);
+		}
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		if (args.length != 5)
+		{
+			System.err.println("Usage: java LoadTest <dbname> <port> <sessions> <employee login> <employee password>");
+			System.exit(2);
+		}
+		int sessions = Integer.parseInt(args[2]);
+		int employees = Integer.getInteger("cafe.loadtest.employees", Math.max(1, sessions / 5));
+		if (sessions < 2 || employees < 1 || employees >= sessions)
+		{
+			System.err.println("Error: need at least one customer and one employee session.");
+			System.exit(2);
+		}
+
+		Class.forName("org.postgresql.Driver");
+		Cafe esql = new Cafe(args[0], args[1]);
+		int lost;
+		try
+		{
+			if (!Cafe.Authenticate(esql, args[3], args[4]) || !(Cafe.IsEmployee(esql) || Cafe.IsManager(esql)))
+			{
+				System.err.println("Error: " + args[3] + " must log in as an employee or manager.");
+				System.exit(2);
+			}
+			LoadTest test = new LoadTest(esql, sessions - employees, args[3], args[4], Long.getLong("cafe.loadtest.thinkMillis", 200L));
+			lost = test.run(employees, Long.getLong("cafe.loadtest.seconds", 30L));
+		}
+		finally
+		{
+			esql.cleanup();
+		}
+		System.exit(lost == 0 ? 0 : 1);
+	}
+
+	/*
+	* Runs the sessions for the given time, then reports
+	* @param employees how many of the sessions are employees
+	* @return orders with a lost update
+	**/
+	public int run(int employees, long seconds) throws Exception
+	{
+		int customers = openOrders.length;
+		final List<Recorder> recorders = new ArrayList<Recorder>();
+		if (hotOrder && employees > employeeItems.size())
+		{
+			throw new IllegalStateException("A hot order takes at most " + employeeItems.size() + " employees, one per item");
+		}
+
+		ExecutorService executor = Session.newExecutor();
+		System.out.printf("Running %d customer and %d employee sessions for %d s on %s, think time %d ms, pool of %s connections%s%n",
+			customers, employees, seconds, Session.hasVirtualThreads() ? "virtual threads" : "platform threads",
+			thinkMillis, System.getProperty("cafe.pool.max", "8"), hotOrder ? ", one hot order" : "");
+
+		Session.installStreams();
+		long start = System.nanoTime();
+		deadline = start + seconds * 1000000000L;
+		for (int i = 0; i < customers + employees; ++i)
+		{
+			final Recorder recorder = new Recorder();
+			recorders.add(recorder);
+			final int session = i;
+			final boolean employee = i >= customers;
+			executor.submit(new Runnable()
+			{
+				public void run()
+				{
+					Session.bind(new Session(new BufferedReader(new StringReader("")), OUT.get(), ERR.get()));
+					try
+					{
+						if (employee)
+						{
+							runEmployee(session, recorder);
+						}
+						else
+						{
+							runCustomer(session, recorder);
+						}
+					}
+					catch (RuntimeException | Error e)
+					{
+						noteError(String.valueOf(e));
+					}
+					finally
+					{
+						Cafe.LogOut(esql);
+						Session.unbind();
+					}
+				}
+			});
+		}
+		executor.shutdown();
+		executor.awaitTermination(seconds + 600, TimeUnit.SECONDS);
+		double elapsed = (System.nanoTime() - start) / 1e9;
+
+		report(recorders, elapsed);
+		int lost = checkLostUpdates();
+		if (!Boolean.getBoolean("cafe.loadtest.keep"))
+		{
+			deleteCreatedData();
+		}
+		return lost;
+	}
+
+	/*
+	* Creates the session's user, then logs in, orders, views and updates
+	* the order until the run is over
+	**/
+	private void runCustomer(int session, Recorder recorder)
+	{
+		SplittableRandom random = new SplittableRandom(runId * 1000 + session);
+		String login = loginPrefix + session;
+		String password = "pw" + session;
+		String phone = String.format("+9%013d", runId * 100000L + session);
+
+		if (!call(recorder, "CreateUser", new Runnable()
+		{
+			public void run()
+			{
+				Cafe.CreateUser(esql);
+			}
+		}, login, password, phone))
+		{
+			return;
+		}
+
+		while (think(random))
+		{
+			if (!call(recorder, "LogIn", new Runnable()
+			{
+				public void run()
+				{
+					Cafe.LogIn(esql);
+				}
+			}, login, password))
+			{
+				continue;
+			}
+			think(random);
+
+			// two distinct items, and a third to add and remove on update
+			int first = random.nextInt(customerItems.size());
+			int second = (first + 1 + random.nextInt(customerItems.size() - 2)) % customerItems.size();
+			int third = first;
+			while (third == first || third == second)
+			{
+				third = random.nextInt(customerItems.size());
+			}
+			final Integer[] orderId = new Integer[1];
+			if (!call(recorder, "AddOrder", new Runnable()
+			{
+				public void run()
+				{
+					orderId[0] = Cafe.AddOrder(esql);
+				}
+			}, customerItems.get(first), "", customerItems.get(second), "load test", "q") || orderId[0] == null || orderId[0] < 0)
+			{
+				continue;
+			}
+			openOrders[session].set(orderId[0]);
+			think(random);
+
+			call(recorder, "ViewOrderStatus", new Runnable()
+			{
+				public void run()
+				{
+					Cafe.ViewOrderStatus(esql);
+				}
+			}, String.valueOf(orderId[0]));
+			think(random);
+
+			String item = customerItems.get(third);
+			call(recorder, "UpdateOrder", new Runnable()
+			{
+				public void run()
+				{
+					Cafe.UpdateOrder(esql);
+				}
+			}, String.valueOf(orderId[0]), "1", item, "", "2", item, "9");
+
+			openOrders[session].set(0);
+			closedOrders.add(orderId[0]);
+		}
+	}
+
+	/*
+	* Logs in, then edits orders customers are editing and pays the ones
+	* they are done with until the run is over
+	**/
+	private void runEmployee(int session, Recorder recorder)
+	{
+		SplittableRandom random = new SplittableRandom(runId * 1000 + session);
+		String item = employeeItems.get(session % employeeItems.size());
+
+		if (!call(recorder, "LogIn", new Runnable()
+		{
+			public void run()
+			{
+				Cafe.LogIn(esql);
+			}
+		}, employeeLogin, employeePassword))
+		{
+			return;
+		}
+
+		Runnable employeeUpdateOrder = new Runnable()
+		{
+			public void run()
+			{
+				Cafe.EmployeeUpdateOrder(esql);
+			}
+		};
+		while (think(random))
+		{
+			int orderId = openOrders[hotOrder ? 0 : random.nextInt(openOrders.length)].get();
+			if (orderId > 0)
+			{
+				call(recorder, "EmployeeUpdateOrder", employeeUpdateOrder, String.valueOf(orderId), "1", item, "", "2", item, "9");
+				think(random);
+			}
+
+			final Integer paid = closedOrders.poll();
+			if (paid != null)
+			{
+				call(recorder, "EmployeeUpdateOrder", employeeUpdateOrder, String.valueOf(paid), "4", "9");
+				think(random);
+				call(recorder, "ViewOrderStatus", new Runnable()
+				{
+					public void run()
+					{
+						Cafe.ViewOrderStatus(esql);
+					}
+				}, String.valueOf(paid));
+			}
+		}
+	}
+
+	/*
+	* Runs one operation with input lines as its keyboard input and records
+	* its latency
+	* @return true if the operation printed no error
+	**/
+	private boolean call(Recorder recorder, String operation, Runnable work, String... input)
+	{
+		ByteArrayOutputStream out = OUT.get();
+		ByteArrayOutputStream err = ERR.get();
+		out.reset();
+		err.reset();
+		Session.current().setInput(new BufferedReader(new StringReader(String.join("\n", input) + "\n")));
+
+		String failure = null;
+		long start = System.nanoTime();
+		try
+		{
+			work.run();
+		}
+		catch (RuntimeException | Session.Closed e)
+		{
+			failure = String.valueOf(e);
+		}
+		long elapsed = System.nanoTime() - start;
+
+		if (failure == null && err.size() > 0)
+		{
+			failure = err.toString(StandardCharsets.UTF_8).trim();
+		}
+		if (failure == null)
+		{
+			String printed = out.toString(StandardCharsets.UTF_8);
+			int error = printed.indexOf("Error");
+			if (error >= 0)
+			{
+				int end = printed.indexOf('\n', error);
+				failure = printed.substring(error, end < 0 ? printed.length() : end).trim();
+			}
+		}
+		if (failure != null)
+		{
+			noteError(operation + ": " + failure);
+		}
+		recorder.record(operation, elapsed, failure != null);
+		return failure == null;
+	}
+
+	private void noteError(String message)
+	{
+		// one line, without the order ids, so the same error is counted once
+		String key = message.split("\n")[0].replaceAll("#?\\d+", "N");
+		AtomicInteger count = errorMessages.get(key);
+		if (count == null && errorMessages.size() < MAX_ERROR_MESSAGES)
+		{
+			errorMessages.putIfAbsent(key, new AtomicInteger());
+			count = errorMessages.get(key);
+		}
+		if (count != null)
+		{
+			count.incrementAndGet();
+		}
+	}
+
+	/*
+	* Pauses for a random think time, on average thinkMillis
+	* @return false once the run is over
+	**/
+	private boolean think(SplittableRandom random)
+	{
+		if (System.nanoTime() >= deadline)
+		{
+			return false;
+		}
+		if (thinkMillis > 0)
+		{
+			try
+			{
+				Thread.sleep(random.nextLong(2 * thinkMillis + 1));
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+		return System.nanoTime() < deadline;
+	}
+
+	/*
+	* Prints throughput and latency percentiles of every operation
+	**/
+	private void report(List<Recorder> recorders, double seconds)
+	{
+		System.out.printf("%n%-20s %8s %8s %10s %10s %10s %10s%n", "operation", "calls", "errors", "ops/s", "p50 ms", "p99 ms", "p999 ms");
+
+		long totalCalls = 0;
+		long totalErrors = 0;
+		for (String operation : OPERATIONS)
+		{
+			long[] merged = new long[0];
+			int errors = 0;
+			for (Recorder recorder : recorders)
+			{
+				long[] latencies = recorder.latencies(operation);
+				int length = merged.length;
+				merged = Arrays.copyOf(merged, length + latencies.length);
+				System.arraycopy(latencies, 0, merged, length, latencies.length);
+				errors += recorder.errors.get(operation)[0];
+			}
+			Arrays.sort(merged);
+			totalCalls += merged.length;
+			totalErrors += errors;
+
+			System.out.printf("%-20s %8d %8d %10.1f %10.2f %10.2f %10.2f%n", operation, merged.length, errors, merged.length / seconds,
+				percentileMillis(merged, 0.50), percentileMillis(merged, 0.99), percentileMillis(merged, 0.999));
+		}
+		System.out.printf("%-20s %8d %8d %10.1f%n", "total", totalCalls, totalErrors, totalCalls / seconds);
+
+		for (Map.Entry<String, AtomicInteger> error : errorMessages.entrySet())
+		{
+			System.out.printf("  %6d x %s%n", error.getValue().get(), error.getKey());
+		}
+	}
+
+	private static double percentileMillis(long[] sorted, double percentile)
+	{
+		return sorted.length == 0 ? 0 : sorted[(int) Math.min(sorted.length - 1, Math.floor(percentile * sorted.length))] / 1e6;
+	}
+
+	/*
+	* Counts the orders of this run whose total is not the sum of their
+	* items' prices
+	* @return orders with a lost update
+	**/
+	private int checkLostUpdates() throws java.sql.SQLException
+	{
+		List<List<String>> result = esql.executeQueryAndReturnResult(CafeQuery.LOAD_TEST_LOST_UPDATES, loginPrefix + "%");
+		int lost = Integer.parseInt(result.get(0).get(1).trim());
+
+		System.out.printf("%nLost updates: %d of %s orders have a total that does not match their items%n",
+			lost, result.get(0).get(0).trim());
+		return lost;
+	}
+
+	private void deleteCreatedData() throws java.sql.SQLException
+	{
+		String logins = loginPrefix + "%";
+		esql.executeUpdate(CafeQuery.LOAD_TEST_DELETE_ITEM_STATUSES, logins);
+		esql.executeUpdate(CafeQuery.LOAD_TEST_DELETE_ORDERS, logins);
+		esql.executeUpdate(CafeQuery.LOAD_TEST_DELETE_USERS, logins);
+	}
+}//end LoadTest
@@ -0,0 +1,42 @@
+/*
+ * One row of the Menu table
+ * =========================
+ */
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+public final class MenuItem
+{
+	/*
+	* Maps a row of (itemName, type, price, description, imageURL).
+	* The char(n) columns are trimmed of their padding.
+	**/
+	public static final RowMapper<MenuItem> MAPPER = new RowMapper<MenuItem>()
+	{
+		public MenuItem mapRow(ResultSet rs) throws SQLException
+		{
+			return new MenuItem(trim(rs.getString(1)), trim(rs.getString(2)), rs.getDouble(3), trim(rs.getString(4)), trim(rs.getString(5)));
+		}
+	};
+
+	public final String itemName;
+	public final String type;
+	public final double price;
+	public final String description;
+	public final String imageURL;
+
+	public MenuItem(String itemName, String type, double price, String description, String imageURL)
+	{
+		this.itemName = itemName;
+		this.type = type;
+		this.price = price;
+		this.description = description;
+		this.imageURL = imageURL;
+	}
+
+	private static String trim(String value)
+	{
+		return value == null ? null : value.trim();
+	}
+}//end MenuItem
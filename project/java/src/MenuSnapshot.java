@@ -0,0 +1,127 @@
+/*
+ * Read-only copy of the Menu table
+ * ================================
+ *
+ * Loaded with one query so a whole cart can be validated and priced
+ * without a round trip per item. Items are indexed by name and by type.
+ * A snapshot never changes; with and without return a changed copy, so
+ * one can be shared between threads and replaced atomically (see
+ * Cafe.getMenu).
+ */
+
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public final class MenuSnapshot
+{
+	// menu items by name, without the char(n) padding
+	private final Map<String, MenuItem> itemsByName;
+
+	// menu items by type, without the char(n) padding
+	private final Map<String, List<MenuItem>> itemsByType;
+
+	public MenuSnapshot(Collection<MenuItem> items)
+	{
+		Map<String, MenuItem> byName = new LinkedHashMap<String, MenuItem>();
+		for (MenuItem item : items)
+		{
+			byName.put(key(item.itemName), item);
+		}
+
+		Map<String, List<MenuItem>> byType = new LinkedHashMap<String, List<MenuItem>>();
+		for (MenuItem item : byName.values())
+		{
+			String type = item.type == null ? "" : key(item.type);
+			List<MenuItem> ofType = byType.get(type);
+			if (ofType == null)
+			{
+				ofType = new ArrayList<MenuItem>();
+				byType.put(type, ofType);
+			}
+			ofType.add(item);
+		}
+		for (Map.Entry<String, List<MenuItem>> entry : byType.entrySet())
+		{
+			entry.setValue(Collections.unmodifiableList(entry.getValue()));
+		}
+
+		this.itemsByName = Collections.unmodifiableMap(byName);
+		this.itemsByType = Collections.unmodifiableMap(byType);
+	}
+
+	/*
+	* Loads every row of the Menu table
+	* @return snapshot of the menu
+	* @throws java.sql.SQLException when failed to read the menu
+	**/
+	public static MenuSnapshot load(Cafe esql) throws SQLException
+	{
+		return new MenuSnapshot(esql.executeQueryAndMapResult(CafeQuery.MENU_ITEMS, MenuItem.MAPPER));
+	}
+
+	/*
+	* Gets a menu item by name. Trailing blanks are ignored, the same way
+	* Postgres compares the char(50) itemName column.
+	* @param itemName
+	* @return MenuItem if on the menu, null otherwise
+	**/
+	public MenuItem get(String itemName)
+	{
+		return itemName == null ? null : itemsByName.get(key(itemName));
+	}
+
+	public boolean contains(String itemName)
+	{
+		return get(itemName) != null;
+	}
+
+	public Collection<MenuItem> items()
+	{
+		return itemsByName.values();
+	}
+
+	/*
+	* Gets the menu items of a type. Trailing blanks are ignored.
+	* @param type
+	* @return the items, empty if there are none
+	**/
+	public List<MenuItem> getByType(String type)
+	{
+		List<MenuItem> items = type == null ? null : itemsByType.get(key(type));
+		return items != null ? items : Collections.<MenuItem>emptyList();
+	}
+
+	/*
+	* Copies the snapshot with item added, or replacing the item of the same name
+	* @param item
+	* @return the changed copy
+	**/
+	public MenuSnapshot with(MenuItem item)
+	{
+		Map<String, MenuItem> items = new LinkedHashMap<String, MenuItem>(itemsByName);
+		items.put(key(item.itemName), item);
+		return new MenuSnapshot(items.values());
+	}
+
+	/*
+	* Copies the snapshot without the item of the given name
+	* @param itemName
+	* @return the changed copy
+	**/
+	public MenuSnapshot without(String itemName)
+	{
+		Map<String, MenuItem> items = new LinkedHashMap<String, MenuItem>(itemsByName);
+		items.remove(key(itemName));
+		return new MenuSnapshot(items.values());
+	}
+
+	static String key(String itemName)
+	{
+		return itemName.stripTrailing();
+	}
+}//end MenuSnapshot
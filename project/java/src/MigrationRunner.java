@@ -0,0 +1,326 @@
+/*
+ * Schema migration runner
+ * =======================
+ *
+ * Applies the numbered scripts of project/sql/migrations (NNN_name.sql)
+ * that the database has not seen yet, in order, each in its own
+ * transaction, and records them in the schema_version table. The version
+ * row is inserted before the script runs, so two runners started at once
+ * cannot both apply the same migration.
+ *
+ * The check command runs EXPLAIN ANALYZE on the hot queries with
+ * sequential scans disabled, inside a transaction that is rolled back.
+ * It fails if any of them still scans a whole table (no index can serve
+ * its predicate), or walks an index while discarding most of what it
+ * reads through a Filter (the index does not match the predicate, e.g.
+ * a primary key scan standing in for a missing index). Run it against a
+ * database with realistic data: on a few rows every plan is cheap and
+ * Postgres picks among indexes almost arbitrarily.
+ *
+ * Usage: java MigrationRunner <dbname> <port> <migrations dir> [migrate|check|status]
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class MigrationRunner
+{
+	// NNN_name.sql
+	private static final Pattern MIGRATION_FILE = Pattern.compile("(\\d+)_(\\w+)\\.sql");
+
+	// actual rows and loops of an EXPLAIN ANALYZE plan node
+	private static final Pattern ACTUAL_ROWS = Pattern.compile("actual time=\\S+ rows=(\\d+) loops=(\\d+)");
+
+	// rows an index scan may filter out before it counts as a full scan
+	private static final long FILTERED_ROWS_LIMIT = 1000;
+
+	private static final String CREATE_SCHEMA_VERSION = "CREATE TABLE IF NOT EXISTS schema_version ("
+		+ "version integer PRIMARY KEY, "
+		+ "name text NOT NULL, "
+		+ "applied timestamp NOT NULL DEFAULT NOW())";
+
+	/*
+	* A hot query with parameters typical of the application
+	**/
+	private static final class HotQuery
+	{
+		final CafeQuery query;
+		final Object[] params;
+
+		HotQuery(CafeQuery query, Object... params)
+		{
+			this.query = query;
+			this.params = params;
+		}
+	}
+
+	// queries run on every screen or on every order; none may need a seq scan
+	private static final HotQuery[] HOT_QUERIES = {
+		new HotQuery(CafeQuery.ORDER_IDS_BY_LOGIN_PAGE, "login", Cafe.FIRST_PAGE, 5),
+		new HotQuery(CafeQuery.UNPAID_ORDER_IDS_BY_LOGIN_PAGE, "login", Cafe.FIRST_PAGE, 5),
+		new HotQuery(CafeQuery.ORDER_IDS_PAST_24_HOURS_PAGE, Cafe.FIRST_PAGE, 20),
+		new HotQuery(CafeQuery.UNPAID_ORDER_IDS_PAST_24_HOURS_PAGE, Cafe.FIRST_PAGE, 20),
+		new HotQuery(CafeQuery.ORDER_BOARD_PAST_24_HOURS_PAGE, Cafe.FIRST_PAGE, 20),
+		new HotQuery(CafeQuery.UNPAID_ORDER_BOARD_PAST_24_HOURS_PAGE, Cafe.FIRST_PAGE, 20),
+		new HotQuery(CafeQuery.ORDER_SUMMARY, 1),
+		new HotQuery(CafeQuery.ORDER_HEADER, 1),
+		new HotQuery(CafeQuery.ORDER_READY, 1),
+		new HotQuery(CafeQuery.READY_UNPAID_ORDERS_PAGE, Cafe.FIRST_PAGE, 20),
+		new HotQuery(CafeQuery.ORDER_LOGIN_AND_PAID, 1),
+		new HotQuery(CafeQuery.ITEM_STATUSES_BY_ORDER, 1),
+		new HotQuery(CafeQuery.ORDER_IDS_WITH_ITEM, "item"),
+		new HotQuery(CafeQuery.ITEM_STATUS_EXISTS_FOR_ITEM, "item"),
+		new HotQuery(CafeQuery.USER_BY_LOGIN_AND_PASSWORD, "login", "password"),
+		new HotQuery(CafeQuery.KITCHEN_TICKETS),
+		new HotQuery(CafeQuery.KITCHEN_TICKETS_BY_ORDER, 1),
+	};
+
+	private final Cafe esql;
+	private final File directory;
+
+	public MigrationRunner(Cafe esql, File directory)
+	{
+		this.esql = esql;
+		this.directory = directory;
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		if (args.length < 3)
+		{
+			System.err.println("Usage: java MigrationRunner <dbname> <port> <migrations dir> [migrate|check|status]");
+			System.exit(2);
+		}
+		String command = args.length > 3 ? args[3] : "migrate";
+
+		Class.forName("org.postgresql.Driver");
+		Cafe esql = new Cafe(args[0], args[1]);
+		boolean ok;
+		try
+		{
+			MigrationRunner runner = new MigrationRunner(esql, new File(args[2]));
+			switch (command)
+			{
+				case "migrate": ok = runner.migrate(); break;
+				case "check": ok = runner.checkIndexes(); break;
+				case "status": ok = runner.printStatus(); break;
+				default:
+					System.err.println("Unknown command: " + command);
+					ok = false;
+					break;
+			}
+		}
+		finally
+		{
+			esql.cleanup();
+		}
+		System.exit(ok ? 0 : 1);
+	}
+
+	/*
+	* Applies every migration newer than the database, in version order
+	* @return true if the schema is up to date
+	**/
+	public boolean migrate() throws SQLException, IOException
+	{
+		Map<Integer, File> migrations = findMigrations();
+		IntList applied = getAppliedVersions();
+
+		int count = 0;
+		for (Map.Entry<Integer, File> migration : migrations.entrySet())
+		{
+			if (contains(applied, migration.getKey()))
+			{
+				continue;
+			}
+			apply(migration.getKey(), migration.getValue());
+			++count;
+		}
+		System.out.println("Applied " + count + " migration(s), " + migrations.size() + " known.");
+		return true;
+	}
+
+	/*
+	* Prints each migration and whether it has been applied
+	* @return true if every migration has been applied
+	**/
+	public boolean printStatus() throws SQLException
+	{
+		IntList applied = getAppliedVersions();
+
+		boolean upToDate = true;
+		for (Map.Entry<Integer, File> migration : findMigrations().entrySet())
+		{
+			boolean done = contains(applied, migration.getKey());
+			upToDate &= done;
+			System.out.println((done ? "applied  " : "pending  ") + migration.getValue().getName());
+		}
+		return upToDate;
+	}
+
+	/*
+	* EXPLAIN ANALYZEs every hot query with sequential scans disabled.
+	* Postgres then only picks a seq scan when no index can be used at all.
+	* @return true if no hot query falls back to a full scan
+	**/
+	public boolean checkIndexes() throws SQLException
+	{
+		final List<String> failures = new ArrayList<String>();
+
+		try
+		{
+			esql.executeInTransaction(new Transaction<Void>()
+			{
+				public Void run() throws SQLException
+				{
+					esql.executeUpdate("SET LOCAL enable_seqscan = off");
+
+					for (HotQuery hot : HOT_QUERIES)
+					{
+						for (String scan : findFullScans(esql.explainQuery(true, hot.query, hot.params)))
+						{
+							failures.add(hot.query + ": " + scan);
+						}
+					}
+					// nothing to keep, the hot queries only read
+					throw new Rollback();
+				}
+			});
+		}
+		catch (Rollback expected)
+		{
+			// rolled back
+		}
+
+		for (String failure : failures)
+		{
+			System.out.println("Full scan in " + failure);
+		}
+		System.out.println(HOT_QUERIES.length + " hot queries checked, " + failures.size() + " full scan(s).");
+		return failures.isEmpty();
+	}
+
+	/*
+	* Finds the plan nodes that read a whole table: seq scans, and index
+	* scans that discard more than FILTERED_ROWS_LIMIT rows through a
+	* Filter and more rows than they return
+	* @param plan lines of EXPLAIN ANALYZE output
+	* @return the offending plan nodes
+	**/
+	static List<String> findFullScans(List<String> plan)
+	{
+		List<String> scans = new ArrayList<String>();
+
+		for (int i = 0; i < plan.size(); ++i)
+		{
+			String node = plan.get(i).trim();
+			if (node.contains("Seq Scan"))
+			{
+				scans.add(node);
+			}
+			else if (node.contains("Index Scan") || node.contains("Index Only Scan"))
+			{
+				Matcher actual = ACTUAL_ROWS.matcher(node);
+				if (!actual.find())
+				{
+					continue;
+				}
+				long loops = Long.parseLong(actual.group(2));
+				long returned = Long.parseLong(actual.group(1)) * loops;
+
+				// the node's details run until the next node; removed rows
+				// are reported per loop
+				long removed = 0;
+				for (int j = i + 1; j < plan.size() && !plan.get(j).trim().startsWith("->"); ++j)
+				{
+					String detail = plan.get(j).trim();
+					if (detail.startsWith("Rows Removed by Filter:"))
+					{
+						removed += Long.parseLong(detail.substring(detail.indexOf(':') + 1).trim()) * loops;
+					}
+				}
+				if (removed > FILTERED_ROWS_LIMIT && removed > returned)
+				{
+					scans.add(node + " removed " + removed + " rows by filter");
+				}
+			}
+		}
+		return scans;
+	}
+
+	/*
+	* Runs one migration script and records its version, as one transaction
+	**/
+	private void apply(final int version, File file) throws SQLException, IOException
+	{
+		final String name = file.getName();
+		final String sql = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+
+		System.out.println("Applying " + name);
+		esql.executeInTransaction(new Transaction<Void>()
+		{
+			public Void run() throws SQLException
+			{
+				esql.executeUpdate(CafeQuery.INSERT_SCHEMA_VERSION, version, name);
+				esql.executeUpdate(sql);
+				return null;
+			}
+		});
+	}
+
+	/*
+	* Lists the migration scripts by version
+	* @throws java.lang.IllegalStateException when two scripts share a version
+	**/
+	private Map<Integer, File> findMigrations()
+	{
+		Map<Integer, File> migrations = new TreeMap<Integer, File>();
+
+		File[] files = directory.listFiles();
+		if (files == null)
+		{
+			throw new IllegalStateException("Migrations directory not found: " + directory);
+		}
+		for (File file : files)
+		{
+			Matcher matcher = MIGRATION_FILE.matcher(file.getName());
+			if (!matcher.matches())
+			{
+				continue;
+			}
+			File previous = migrations.put(Integer.parseInt(matcher.group(1)), file);
+			if (previous != null)
+			{
+				throw new IllegalStateException("Migrations " + previous.getName() + " and " + file.getName() + " share a version");
+			}
+		}
+		return migrations;
+	}
+
+	private IntList getAppliedVersions() throws SQLException
+	{
+		esql.executeUpdate(CREATE_SCHEMA_VERSION);
+		return esql.executeQueryForIntList(CafeQuery.SCHEMA_VERSIONS);
+	}
+
+	private static boolean contains(IntList list, int value)
+	{
+		for (int i = 0; i < list.size(); ++i)
+		{
+			if (list.get(i) == value)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+}//end MigrationRunner
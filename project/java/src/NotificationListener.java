@@ -0,0 +1,182 @@
+/*
+ * Listener for database change notifications
+ * ==========================================
+ *
+ * Holds one connection of its own (not pooled, LISTEN belongs to the
+ * session) that LISTENs on the cafe_changes channel, and hands every
+ * notification to the registered TableChangeListeners on a background
+ * thread. Notifications are received as soon as they arrive, so other
+ * processes' changes reach the caches within milliseconds of their
+ * commit. Notifications sent from the connections of this process's
+ * pool are skipped: the helpers that wrote have already updated the
+ * caches.
+ *
+ * Notifications sent while the listener is not connected are lost. After
+ * every (re)connect the listeners are therefore told that anything may
+ * have changed.
+ */
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+public final class NotificationListener implements Runnable
+{
+	public static final String CHANNEL = "cafe_changes";
+
+	// longest wait for a notification, so close() is noticed
+	private static final int POLL_MILLIS = 500;
+
+	// pause before reconnecting after the connection failed
+	private static final long RECONNECT_MILLIS = 2000;
+
+	private final String url;
+	private final ConnectionPool ownConnections;
+	private final List<TableChangeListener> listeners = new CopyOnWriteArrayList<TableChangeListener>();
+	private final Thread thread;
+
+	private volatile boolean closed = false;
+
+	/*
+	* Creates the listener; start() connects and begins listening
+	* @param url the JDBC connection URL
+	* @param ownConnections pool whose connections' notifications are skipped
+	**/
+	public NotificationListener(String url, ConnectionPool ownConnections)
+	{
+		this.url = url;
+		this.ownConnections = ownConnections;
+		this.thread = new Thread(this, "cafe-notification-listener");
+		this.thread.setDaemon(true);
+	}
+
+	public void addListener(TableChangeListener listener)
+	{
+		listeners.add(listener);
+	}
+
+	public void start()
+	{
+		thread.start();
+	}
+
+	/*
+	* Stops listening; the connection is closed within POLL_MILLIS
+	**/
+	public void close()
+	{
+		closed = true;
+	}
+
+	public void run()
+	{
+		while (!closed)
+		{
+			Connection conn = null;
+			try
+			{
+				conn = DriverManager.getConnection(url);
+				Statement stmt = conn.createStatement();
+				stmt.execute("LISTEN " + CHANNEL);
+				stmt.close();
+
+				// whatever changed while not listening was missed
+				dispatch(null, null);
+
+				PGConnection pg = conn.unwrap(PGConnection.class);
+				while (!closed)
+				{
+					PGNotification[] notifications = pg.getNotifications(POLL_MILLIS);
+					if (notifications == null)
+					{
+						continue;
+					}
+					for (PGNotification notification : notifications)
+					{
+						if (!ownConnections.isOwnBackend(notification.getPID()))
+						{
+							handle(notification.getParameter());
+						}
+					}
+				}
+			}
+			catch (SQLException e)
+			{
+				if (!closed)
+				{
+					System.err.println("Change notifications interrupted: " + e.getMessage());
+					pause();
+				}
+			}
+			finally
+			{
+				close(conn);
+			}
+		}
+	}
+
+	/*
+	* Dispatches a '<table>:<key>' or '<table>' payload
+	**/
+	private void handle(String payload)
+	{
+		int colon = payload.indexOf(':');
+		if (colon < 0)
+		{
+			dispatch(payload, null);
+		}
+		else
+		{
+			dispatch(payload.substring(0, colon), payload.substring(colon + 1));
+		}
+	}
+
+	private void dispatch(String table, String key)
+	{
+		for (TableChangeListener listener : listeners)
+		{
+			try
+			{
+				listener.tableChanged(table, key);
+			}
+			catch (RuntimeException e)
+			{
+				System.err.println(e.getMessage());
+			}
+		}
+	}
+
+	private void pause()
+	{
+		try
+		{
+			Thread.sleep(RECONNECT_MILLIS);
+		}
+		catch (InterruptedException e)
+		{
+			closed = true;
+		}
+	}
+
+	private static void close(Connection conn)
+	{
+		if (conn == null)
+		{
+			return;
+		}
+		try
+		{
+			conn.close();
+		}
+		catch (SQLException e)
+		{
+			// already broken
+		}
+	}
+}//end NotificationListener
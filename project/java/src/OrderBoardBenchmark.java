@@ -0,0 +1,139 @@
+/*
+ * Order board benchmark
+ * =====================
+ *
+ * Measures how long the 24 hour order board takes to render as the number
+ * of orders in the window grows, comparing one summary query per order
+ * with the single streamed ORDER_BOARD query. Each volume is seeded inside
+ * a transaction that is rolled back afterwards, so the database is left
+ * as it was.
+ *
+ * Usage: java OrderBoardBenchmark <dbname> <port> <login> <password> [orders...]
+ * The login must be an employee or a manager.
+ */
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+public class OrderBoardBenchmark
+{
+	// items seeded on every order
+	private static final int ITEMS_PER_ORDER = 3;
+
+	// timed runs per approach and volume, the median is reported
+	private static final int RUNS = 5;
+
+	private static final int[] DEFAULT_VOLUMES = { 100, 1000, 10000 };
+
+	public static void main(String[] args) throws Exception
+	{
+		if (args.length < 4)
+		{
+			System.err.println("Usage: java OrderBoardBenchmark <dbname> <port> <login> <password> [orders...]");
+			return;
+		}
+
+		int[] volumes = DEFAULT_VOLUMES;
+		if (args.length > 4)
+		{
+			volumes = new int[args.length - 4];
+			for (int i = 0; i < volumes.length; ++i)
+			{
+				volumes[i] = Integer.parseInt(args[i + 4]);
+			}
+		}
+
+		Class.forName("org.postgresql.Driver");
+		final Cafe esql = new Cafe(args[0], args[1]);
+		try
+		{
+			if (!Cafe.Authenticate(esql, args[2], args[3]) || !(Cafe.IsEmployee(esql) || Cafe.IsManager(esql)))
+			{
+				System.err.println("Error: " + args[2] + " must log in as an employee or manager.");
+				return;
+			}
+
+			System.out.printf("%10s %16s %16s %10s%n", "orders", "per-order ms", "streamed ms", "speedup");
+			for (final int volume : volumes)
+			{
+				try
+				{
+					esql.executeInTransaction(new Transaction<Void>()
+					{
+						public Void run() throws SQLException
+						{
+							seed(esql, volume);
+
+							int total = Cafe.GetOrderIdPageFromPast24Hours(esql, false, Cafe.FIRST_PAGE, Integer.MAX_VALUE).size();
+							double perOrder = median(esql, false);
+							double streamed = median(esql, true);
+
+							System.out.printf("%10d %16.2f %16.2f %9.1fx%n", total, perOrder, streamed, perOrder / streamed);
+							throw new Rollback();
+						}
+					});
+				}
+				catch (Rollback expected)
+				{
+					// seeded orders rolled back
+				}
+			}
+		}
+		finally
+		{
+			esql.cleanup();
+		}
+	}
+
+	/*
+	* Inserts count orders from the last 24 hours, each with ITEMS_PER_ORDER items
+	**/
+	private static void seed(Cafe esql, int count) throws SQLException
+	{
+		esql.executeUpdate("WITH seeded AS ("
+			+ "INSERT INTO Orders (login, paid, timeStampRecieved, total) "
+			+ "SELECT 'benchmark', FALSE, NOW(), 0 FROM generate_series(1, " + count + ") "
+			+ "RETURNING orderid) "
+			+ "INSERT INTO ItemStatus (orderid, itemName, lastUpdated, status, comments) "
+			+ "SELECT seeded.orderid, items.itemName, NOW(), 'In progress', '' FROM seeded "
+			+ "CROSS JOIN (SELECT itemName FROM Menu ORDER BY itemName LIMIT " + ITEMS_PER_ORDER + ") items");
+	}
+
+	/*
+	* Renders the whole board RUNS times, after one warm-up run
+	* @param streamed true for the ORDER_BOARD query, false for a query per order
+	* @return median milliseconds of a render
+	**/
+	private static double median(Cafe esql, boolean streamed) throws SQLException
+	{
+		PrintStream out = new PrintStream(OutputStream.nullOutputStream());
+		double[] millis = new double[RUNS];
+
+		render(esql, streamed, out);
+		for (int i = 0; i < RUNS; ++i)
+		{
+			long start = System.nanoTime();
+			render(esql, streamed, out);
+			millis[i] = (System.nanoTime() - start) / 1000000.0;
+		}
+		Arrays.sort(millis);
+		return millis[RUNS / 2];
+	}
+
+	private static void render(Cafe esql, boolean streamed, PrintStream out) throws SQLException
+	{
+		if (streamed)
+		{
+			Cafe.StreamOrderBoardPage(esql, false, Cafe.FIRST_PAGE, Integer.MAX_VALUE, out);
+			return;
+		}
+
+		IntList orderIdList = Cafe.GetOrderIdPageFromPast24Hours(esql, false, Cafe.FIRST_PAGE, Integer.MAX_VALUE);
+		for (int i = 0; i < orderIdList.size(); ++i)
+		{
+			Cafe.PrintOrderSummary(OrderSummary.load(esql, orderIdList.get(i)), out);
+		}
+	}
+}//end OrderBoardBenchmark
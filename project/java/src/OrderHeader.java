@@ -0,0 +1,37 @@
+/*
+ * One row of the Orders table
+ * ===========================
+ */
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+public final class OrderHeader
+{
+	/*
+	* Maps a row of (orderid, login, paid, timeStampRecieved, total)
+	**/
+	public static final RowMapper<OrderHeader> MAPPER = new RowMapper<OrderHeader>()
+	{
+		public OrderHeader mapRow(ResultSet rs) throws SQLException
+		{
+			return new OrderHeader(rs.getInt(1), rs.getString(2), rs.getBoolean(3), rs.getTimestamp(4), rs.getDouble(5));
+		}
+	};
+
+	public final int orderId;
+	public final String login;
+	public final boolean paid;
+	public final Timestamp timeStampRecieved;
+	public final double total;
+
+	public OrderHeader(int orderId, String login, boolean paid, Timestamp timeStampRecieved, double total)
+	{
+		this.orderId = orderId;
+		this.login = login;
+		this.paid = paid;
+		this.timeStampRecieved = timeStampRecieved;
+		this.total = total;
+	}
+}//end OrderHeader
@@ -0,0 +1,46 @@
+/*
+ * One item line of an order summary
+ * =================================
+ */
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+public final class OrderLine
+{
+	/*
+	* Maps columns 6 to 11 of an ORDER_SUMMARY row:
+	* (itemName, lastUpdated, status, comments, price, ready).
+	* The char(n) columns are trimmed of their padding.
+	**/
+	public static final RowMapper<OrderLine> MAPPER = new RowMapper<OrderLine>()
+	{
+		public OrderLine mapRow(ResultSet rs) throws SQLException
+		{
+			return new OrderLine(trim(rs.getString(6)), rs.getTimestamp(7), trim(rs.getString(8)), trim(rs.getString(9)), rs.getDouble(10), rs.getBoolean(11));
+		}
+	};
+
+	public final String itemName;
+	public final Timestamp lastUpdated;
+	public final String status;
+	public final String comments;
+	public final double price;
+	public final boolean ready;
+
+	public OrderLine(String itemName, Timestamp lastUpdated, String status, String comments, double price, boolean ready)
+	{
+		this.itemName = itemName;
+		this.lastUpdated = lastUpdated;
+		this.status = status;
+		this.comments = comments;
+		this.price = price;
+		this.ready = ready;
+	}
+
+	private static String trim(String value)
+	{
+		return value == null ? null : value.trim();
+	}
+}//end OrderLine
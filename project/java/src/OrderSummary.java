@@ -0,0 +1,117 @@
+/*
+ * An order with all of its item lines
+ * ===================================
+ *
+ * Built from the rows of the ORDER_SUMMARY query, which joins an order
+ * to its ItemStatus rows and their menu prices, so the header, the lines
+ * and the readiness of the order come back in a single round trip.
+ */
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public final class OrderSummary
+{
+	public final OrderHeader header;
+
+	// item lines of the order, possibly empty
+	public final List<OrderLine> lines;
+
+	public OrderSummary(OrderHeader header, List<OrderLine> lines)
+	{
+		this.header = header;
+		this.lines = Collections.unmodifiableList(new ArrayList<OrderLine>(lines));
+	}
+
+	/*
+	* Loads an order and its item lines
+	* @param orderId
+	* @return OrderSummary if found, null otherwise
+	* @throws java.sql.SQLException when failed to read the order
+	**/
+	public static OrderSummary load(Cafe esql, int orderId) throws SQLException
+	{
+		Collector collector = new Collector();
+		esql.executeQueryAndStreamResult(CafeQuery.ORDER_SUMMARY, Cafe.STREAM_FETCH_SIZE, collector, orderId);
+
+		List<OrderSummary> result = collector.finish();
+		return result.isEmpty() ? null : result.get(0);
+	}
+
+	/*
+	* Determines if the order is ready (AKA all item statuses are "Ready")
+	* @return true if ready, false otherwise
+	**/
+	public boolean isReady()
+	{
+		for (OrderLine line : lines)
+		{
+			if (!line.ready)
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/*
+	* Groups summary rows into one OrderSummary per order. The rows of an
+	* order must arrive next to each other. Each order is passed to
+	* handleSummary as soon as its last row has arrived; override it to
+	* consume orders while the rows are still streaming in.
+	**/
+	public static class Collector implements RowHandler
+	{
+		private final List<OrderSummary> summaries = new ArrayList<OrderSummary>();
+
+		private OrderHeader header = null;
+		private final List<OrderLine> lines = new ArrayList<OrderLine>();
+
+		public void handleRow(ResultSet rs) throws SQLException
+		{
+			if (header == null || header.orderId != rs.getInt(1))
+			{
+				flush();
+				header = OrderHeader.MAPPER.mapRow(rs);
+			}
+
+			// an order without items comes back as one row with null item columns
+			if (rs.getString(6) != null)
+			{
+				lines.add(OrderLine.MAPPER.mapRow(rs));
+			}
+		}
+
+		/*
+		* Handles a completed order. Collects it by default.
+		* @param summary
+		**/
+		protected void handleSummary(OrderSummary summary)
+		{
+			summaries.add(summary);
+		}
+
+		/*
+		* Finishes the last order
+		* @return collected summaries, in the order their rows arrived
+		**/
+		public List<OrderSummary> finish()
+		{
+			flush();
+			return summaries;
+		}
+
+		private void flush()
+		{
+			if (header != null)
+			{
+				handleSummary(new OrderSummary(header, lines));
+				header = null;
+				lines.clear();
+			}
+		}
+	}//end Collector
+}//end OrderSummary
@@ -0,0 +1,86 @@
+/*
+ * Connection handed out by the ConnectionPool
+ * ===========================================
+ *
+ * Pairs a physical connection with the StatementCache of its prepared
+ * statements, so statements prepared on a connection stay with it while
+ * it moves between borrowers.
+ */
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import org.postgresql.PGConnection;
+
+public class PooledConnection
+{
+	// physical database connection
+	private final Connection connection;
+
+	// prepared statements of the named queries, cached for connection
+	private final StatementCache statements;
+
+	// time the connection was last returned to the pool
+	private long lastReleasedMillis;
+
+	// process id of the connection's server backend, which Postgres
+	// reports as the sender of the notifications its commits deliver
+	private final int backendPid;
+
+	public PooledConnection(Connection connection) throws SQLException
+	{
+		this.connection = connection;
+		this.backendPid = connection.unwrap(PGConnection.class).getBackendPID();
+		this.statements = new StatementCache(connection);
+		this.lastReleasedMillis = System.currentTimeMillis();
+	}
+
+	/*
+	* Gets the physical connection
+	* @return connection
+	**/
+	public Connection getConnection()
+	{
+		return connection;
+	}
+
+	/*
+	* Gets the statement cache of this connection
+	* @return statement cache
+	**/
+	public StatementCache getStatements()
+	{
+		return statements;
+	}
+
+	public int getBackendPid()
+	{
+		return backendPid;
+	}
+
+	long getLastReleasedMillis()
+	{
+		return lastReleasedMillis;
+	}
+
+	void markReleased()
+	{
+		lastReleasedMillis = System.currentTimeMillis();
+	}
+
+	/*
+	* Closes the cached statements and the physical connection
+	**/
+	void close()
+	{
+		statements.close();
+		try
+		{
+			connection.close();
+		}
+		catch (SQLException e)
+		{
+			// ignored.
+		}
+	}
+}//end PooledConnection
@@ -0,0 +1,20 @@
+/*
+ * Rollback of a trial transaction
+ * ===============================
+ *
+ * Thrown from Transaction.run() to roll back work that was only run to
+ * be measured or checked (i.e. seeded benchmark data, a migration check),
+ * and caught by the caller of Cafe.executeInTransaction.
+ */
+
+import java.sql.SQLException;
+
+public final class Rollback extends SQLException
+{
+	private static final long serialVersionUID = 1L;
+
+	public Rollback()
+	{
+		super("rollback");
+	}
+}//end Rollback
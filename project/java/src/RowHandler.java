@@ -0,0 +1,22 @@
+/*
+ * Callback for streamed query results
+ * ===================================
+ *
+ * Receives the rows of Cafe.executeQueryAndStreamResult one at a time,
+ * positioned on the current row. Rows are fetched from a server-side
+ * cursor in batches, so the handler should copy out what it needs and
+ * not keep the ResultSet.
+ */
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+public interface RowHandler
+{
+	/*
+	* Handles the row the result set is positioned on
+	* @param rs result set positioned on the current row
+	* @throws java.sql.SQLException when a column could not be read
+	**/
+	void handleRow(ResultSet rs) throws SQLException;
+}//end RowHandler
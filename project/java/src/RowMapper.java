@@ -0,0 +1,22 @@
+/*
+ * Typed row mapping for query results
+ * ===================================
+ *
+ * Turns the row a result set is positioned on into one object, reading
+ * each column with its typed getter (getInt, getDouble, getTimestamp...)
+ * instead of going through getString and parsing it again.
+ */
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+public interface RowMapper<T>
+{
+	/*
+	* Maps the row the result set is positioned on
+	* @param rs result set positioned on the current row
+	* @return the mapped object
+	* @throws java.sql.SQLException when a column could not be read
+	**/
+	T mapRow(ResultSet rs) throws SQLException;
+}//end RowMapper
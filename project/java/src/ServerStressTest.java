@@ -0,0 +1,319 @@
+/*
+ * Stress test of CafeServer
+ * =========================
+ *
+ * Connects N clients at once to a running CafeServer and has each of
+ * them go through the same scripted session over and over: log in, view
+ * the first page of the order history, browse the menu by type and by
+ * name, log out and exit. Every line sent is one request; its latency is the time until
+ * the server asks for the next line. The run is repeated for each client
+ * count, and the throughput of each is compared with what the first
+ * count reached per client, so it shows how far the server scales.
+ *
+ * A request counts as an error when its response contains "Error" or
+ * "invalid", or the server hangs up before the session exited.
+ *
+ * Clients log in as <login pattern> and <password pattern> with %d
+ * replaced by a random user number, i.e. "user%d pw%d" for the users of
+ * DataGenerator.
+ *
+ * Usage: java ServerStressTest <listen port> <login pattern> <password pattern> [clients...]
+ * Options (system properties):
+ *   cafe.stress.seconds      length of the run per client count (default 10)
+ *   cafe.stress.thinkMillis  pause before each request (default 0)
+ *   cafe.stress.users        user numbers to pick from (default 1000)
+ *   cafe.stress.itemType     menu type browsed (default Drinks)
+ *   cafe.stress.itemName     menu item browsed (default Coffee)
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ServerStressTest
+{
+	private static final int[] DEFAULT_CLIENTS = { 1, 10, 50, 100, 200 };
+
+	// the customers' menu choice; employees and managers have none
+	private static final String VIEW_ORDER_HISTORY = "5";
+
+	// asked after each page of the order history
+	private static final String MORE_ORDERS_PROMPT = "(y/n): ";
+
+	// how the prompts of the scripted session end; data lines such as
+	// "Status: Ready" can be cut after the ": " by the network
+	private static final String[] PROMPTS = { "choice: ", "login: ", "password: ", "type: ", "name: ", MORE_ORDERS_PROMPT };
+
+	/*
+	* Latencies and counts of one client
+	**/
+	private static final class ClientStats
+	{
+		long[] nanos = new long[1024];
+		int requests = 0;
+		int sessions = 0;
+		int errors = 0;
+
+		void record(long latency)
+		{
+			if (requests == nanos.length)
+			{
+				nanos = Arrays.copyOf(nanos, requests * 2);
+			}
+			nanos[requests++] = latency;
+		}
+	}
+
+	private final int port;
+	private final String loginPattern;
+	private final String passwordPattern;
+	private final int users;
+	private final long thinkMillis;
+	private final String itemType;
+	private final String itemName;
+
+	public ServerStressTest(int port, String loginPattern, String passwordPattern)
+	{
+		this.port = port;
+		this.loginPattern = loginPattern;
+		this.passwordPattern = passwordPattern;
+		this.users = Integer.getInteger("cafe.stress.users", 1000);
+		this.thinkMillis = Long.getLong("cafe.stress.thinkMillis", 0L);
+		this.itemType = System.getProperty("cafe.stress.itemType", "Drinks");
+		this.itemName = System.getProperty("cafe.stress.itemName", "Coffee");
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		if (args.length < 3)
+		{
+			System.err.println("Usage: java ServerStressTest <listen port> <login pattern> <password pattern> [clients...]");
+			System.exit(2);
+		}
+
+		int[] levels = DEFAULT_CLIENTS;
+		if (args.length > 3)
+		{
+			levels = new int[args.length - 3];
+			for (int i = 0; i < levels.length; ++i)
+			{
+				levels[i] = Integer.parseInt(args[i + 3]);
+			}
+		}
+
+		ServerStressTest test = new ServerStressTest(Integer.parseInt(args[0]), args[1], args[2]);
+		long seconds = Long.getLong("cafe.stress.seconds", 10L);
+
+		System.out.printf("%8s %10s %10s %10s %10s %10s %8s %10s%n", "clients", "sessions", "sessions/s", "requests/s", "p50 ms", "p99 ms", "errors", "efficiency");
+		double perClientBase = 0;
+		for (int clients : levels)
+		{
+			double[] result = test.run(clients, seconds);
+			if (perClientBase == 0)
+			{
+				perClientBase = result[1] / clients;
+			}
+			System.out.printf("%8d %10.0f %10.1f %10.1f %10.2f %10.2f %8.0f %9.0f%%%n", clients, result[0], result[0] / seconds, result[1],
+				result[2], result[3], result[4], 100 * result[1] / (clients * perClientBase));
+		}
+	}
+
+	/*
+	* Runs clients sessions in a loop for seconds
+	* @return sessions, requests/s, p50 ms, p99 ms and errors
+	**/
+	public double[] run(int clients, long seconds) throws InterruptedException
+	{
+		final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+		final List<ClientStats> stats = new ArrayList<ClientStats>();
+		final AtomicLong seed = new AtomicLong(System.nanoTime());
+
+		ExecutorService executor = Session.newExecutor();
+		long start = System.nanoTime();
+		for (int i = 0; i < clients; ++i)
+		{
+			final ClientStats client = new ClientStats();
+			stats.add(client);
+			executor.execute(new Runnable()
+			{
+				public void run()
+				{
+					SplittableRandom random = new SplittableRandom(seed.incrementAndGet());
+					while (System.nanoTime() < deadline)
+					{
+						runSession(client, random.nextInt(users));
+					}
+				}
+			});
+		}
+		executor.shutdown();
+		executor.awaitTermination(seconds + 60, TimeUnit.SECONDS);
+		double elapsed = (System.nanoTime() - start) / 1e9;
+
+		int sessions = 0;
+		int requests = 0;
+		int errors = 0;
+		for (ClientStats client : stats)
+		{
+			sessions += client.sessions;
+			requests += client.requests;
+			errors += client.errors;
+		}
+		long[] merged = new long[requests];
+		int at = 0;
+		for (ClientStats client : stats)
+		{
+			System.arraycopy(client.nanos, 0, merged, at, client.requests);
+			at += client.requests;
+		}
+		Arrays.sort(merged);
+		return new double[] { sessions, requests / elapsed, percentileMillis(merged, 0.50), percentileMillis(merged, 0.99), errors };
+	}
+
+	/*
+	* Connects and goes through the scripted session once
+	**/
+	private void runSession(ClientStats client, int user)
+	{
+		String[] script = {
+			"2", String.format(loginPattern, user), String.format(passwordPattern, user),
+			VIEW_ORDER_HISTORY,
+			"2", itemType,
+			"1", itemName,
+			"9",
+			"9",
+		};
+
+		Socket socket = null;
+		try
+		{
+			socket = new Socket(InetAddress.getLoopbackAddress(), port);
+			socket.setTcpNoDelay(true);
+			InputStream in = socket.getInputStream();
+			OutputStream out = socket.getOutputStream();
+			String response = readResponse(in);
+			if (response == null)
+			{
+				++client.errors;
+				return;
+			}
+
+			for (int i = 0; i < script.length; ++i)
+			{
+				if (script[i] == VIEW_ORDER_HISTORY && !response.contains("View Order History"))
+				{
+					continue;
+				}
+				response = request(client, in, out, script[i]);
+				// only users with a full page of orders are asked for more
+				while (response != null && response.endsWith(MORE_ORDERS_PROMPT))
+				{
+					response = request(client, in, out, "n");
+				}
+
+				boolean last = i == script.length - 1;
+				if (response == null ? !last : response.contains("Error") || response.contains("invalid"))
+				{
+					++client.errors;
+					return;
+				}
+			}
+			++client.sessions;
+		}
+		catch (IOException e)
+		{
+			++client.errors;
+		}
+		finally
+		{
+			if (socket != null)
+			{
+				try
+				{
+					socket.close();
+				}
+				catch (IOException e)
+				{
+					// already gone
+				}
+			}
+		}
+	}
+
+	/*
+	* Sends one line and times the response
+	* @return the response, null when the server hung up
+	**/
+	private String request(ClientStats client, InputStream in, OutputStream out, String line) throws IOException
+	{
+		pause();
+		long start = System.nanoTime();
+		out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+		out.flush();
+		String response = readResponse(in);
+		client.record(System.nanoTime() - start);
+		return response;
+	}
+
+	/*
+	* Reads until the server asks for input again
+	* @return what was read, null when the server hung up
+	**/
+	private static String readResponse(InputStream in) throws IOException
+	{
+		StringBuilder response = new StringBuilder();
+		byte[] buffer = new byte[8192];
+		while (true)
+		{
+			int n = in.read(buffer);
+			if (n < 0)
+			{
+				return null;
+			}
+			response.append(new String(buffer, 0, n, StandardCharsets.UTF_8));
+			for (String prompt : PROMPTS)
+			{
+				if (endsWith(response, prompt))
+				{
+					return response.toString();
+				}
+			}
+		}
+	}
+
+	private static boolean endsWith(StringBuilder text, String suffix)
+	{
+		int start = text.length() - suffix.length();
+		return start >= 0 && text.indexOf(suffix, start) == start;
+	}
+
+	private void pause()
+	{
+		if (thinkMillis > 0)
+		{
+			try
+			{
+				Thread.sleep(thinkMillis);
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private static double percentileMillis(long[] sorted, double percentile)
+	{
+		return sorted.length == 0 ? 0 : sorted[(int) Math.min(sorted.length - 1, Math.floor(percentile * sorted.length))] / 1e6;
+	}
+}//end ServerStressTest
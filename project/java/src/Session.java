@@ -0,0 +1,253 @@
+/*
+ * One person's session with the Cafe program
+ * ==========================================
+ *
+ * Carries who is logged in (login, user type and profile) together with
+ * where the session's keyboard input comes from and where what it prints
+ * goes. The Cafe helpers read the session bound to the current thread,
+ * so one process can serve many sessions at once, each on its own
+ * thread: the console session of the interactive program, the sockets of
+ * CafeServer, or the scripted sessions of LoadTest.
+ *
+ * Threads without a bound session use the console session. Once
+ * installStreams() has run, System.out and System.err write to the
+ * current thread's session, so the helpers' output reaches the right
+ * person without changing how they print. Database connections are not
+ * held by a session; statements borrow one from Cafe's pool, and a
+ * transaction keeps one for its duration.
+ */
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public final class Session
+{
+	// the process's own stdout and stderr, before installStreams
+	private static final PrintStream STDOUT = System.out;
+	private static final PrintStream STDERR = System.err;
+
+	private static final Session CONSOLE = new Session(new BufferedReader(new InputStreamReader(System.in)), STDOUT, STDERR);
+
+	private static final ThreadLocal<Session> CURRENT = new ThreadLocal<Session>();
+
+	private static boolean streamsInstalled = false;
+
+	/*
+	* Thrown when a session's input has ended (i.e. its client hung up).
+	* An Error, so the menus' catch (Exception) blocks cannot keep asking
+	* for input that never comes.
+	**/
+	public static final class Closed extends Error
+	{
+		private static final long serialVersionUID = 1L;
+
+		public Closed()
+		{
+			super("Session input closed");
+		}
+	}
+
+	/*
+	* System.out or System.err after installStreams: writes to the current
+	* thread's session
+	**/
+	private static final class SessionOutput extends OutputStream
+	{
+		private final boolean err;
+
+		SessionOutput(boolean err)
+		{
+			this.err = err;
+		}
+
+		public void write(int b) throws IOException
+		{
+			target().write(b);
+		}
+
+		public void write(byte[] b, int off, int len) throws IOException
+		{
+			target().write(b, off, len);
+		}
+
+		public void flush() throws IOException
+		{
+			target().flush();
+		}
+
+		private OutputStream target()
+		{
+			Session session = current();
+			return err ? session.err : session.out;
+		}
+	}
+
+	private BufferedReader in;
+	private final OutputStream out;
+	private final OutputStream err;
+
+	private String login = null;
+	private String userType = null;
+	private UserProfile profile = null;
+
+	/*
+	* Creates a session that is not logged in
+	* @param in the session's keyboard input
+	* @param out receives what the session prints to System.out
+	* @param err receives what the session prints to System.err
+	**/
+	public Session(BufferedReader in, OutputStream out, OutputStream err)
+	{
+		this.in = in;
+		this.out = out;
+		this.err = err;
+	}
+
+	/*
+	* Gets the session bound to the current thread
+	* @return the bound session, the console session if there is none
+	**/
+	public static Session current()
+	{
+		Session session = CURRENT.get();
+		return session != null ? session : CONSOLE;
+	}
+
+	/*
+	* Binds session to the current thread until unbind()
+	**/
+	public static void bind(Session session)
+	{
+		CURRENT.set(session);
+	}
+
+	public static void unbind()
+	{
+		CURRENT.remove();
+	}
+
+	/*
+	* Routes System.out and System.err to the current thread's session.
+	* Threads without a session keep printing to the process's stdout and
+	* stderr.
+	**/
+	public static synchronized void installStreams()
+	{
+		if (!streamsInstalled)
+		{
+			System.setOut(new PrintStream(new SessionOutput(false), false));
+			System.setErr(new PrintStream(new SessionOutput(true), false));
+			streamsInstalled = true;
+		}
+	}
+
+	/*
+	* Gets the process's own stdout, whatever session is current
+	**/
+	public static PrintStream console()
+	{
+		return STDOUT;
+	}
+
+	/*
+	* Runs sessions one per virtual thread when the JVM has them (Java 21+),
+	* one per platform thread otherwise
+	**/
+	public static ExecutorService newExecutor()
+	{
+		try
+		{
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch (ReflectiveOperationException e)
+		{
+			return Executors.newCachedThreadPool();
+		}
+	}
+
+	public static boolean hasVirtualThreads()
+	{
+		return Runtime.version().feature() >= 21;
+	}
+
+	/*
+	* Reads one line of the session's input. Whatever the session printed
+	* is flushed first, so the prompt is seen before the read waits.
+	* @return the line, null at the end of the console's input
+	* @throws Session.Closed when any other session's input ends or fails
+	**/
+	public String readLine() throws IOException
+	{
+		if (this == CONSOLE)
+		{
+			return in.readLine();
+		}
+
+		String line;
+		try
+		{
+			out.flush();
+			err.flush();
+			line = in.readLine();
+		}
+		catch (IOException e)
+		{
+			throw new Closed();
+		}
+		if (line == null)
+		{
+			throw new Closed();
+		}
+		return line;
+	}
+
+	/*
+	* Replaces the session's input (i.e. with the next scripted operation)
+	**/
+	public void setInput(BufferedReader in)
+	{
+		this.in = in;
+	}
+
+	public String getLogin()
+	{
+		return login;
+	}
+
+	public String getUserType()
+	{
+		return userType;
+	}
+
+	public void setUserType(String userType)
+	{
+		this.userType = userType;
+	}
+
+	public UserProfile getProfile()
+	{
+		return profile;
+	}
+
+	/*
+	* Records who logged in, or logs out when profile is null
+	* @param login as entered
+	* @param profile the user's row
+	**/
+	public void logIn(String login, UserProfile profile)
+	{
+		this.login = login;
+		this.profile = profile;
+		this.userType = profile != null ? profile.getType() : null;
+	}
+
+	public void logOut()
+	{
+		logIn(null, null);
+	}
+}//end Session
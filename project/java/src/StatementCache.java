@@ -0,0 +1,125 @@
+/*
+ * Per-connection PreparedStatement cache
+ * ======================================
+ *
+ * Keeps one PreparedStatement per CafeQuery for a single connection. The
+ * first use of a query prepares it (and, with prepareThreshold=1 on the
+ * connection URL, makes pgjdbc create a named server-side statement);
+ * every later use only rebinds the parameters.
+ */
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class StatementCache
+{
+	// connection every cached statement belongs to
+	private final Connection connection;
+
+	// prepared statements by query name
+	private final Map<CafeQuery, PreparedStatement> statements = new EnumMap<CafeQuery, PreparedStatement>(CafeQuery.class);
+
+	// statements prepared (parsed) on this connection
+	private final AtomicLong parsed = new AtomicLong();
+
+	// executions served by an already prepared statement
+	private final AtomicLong reused = new AtomicLong();
+
+	public StatementCache(Connection connection)
+	{
+		this.connection = connection;
+	}
+
+	/*
+	* Gets the prepared statement for query, preparing it on first use
+	* @param query
+	* @return PreparedStatement with its parameters cleared
+	* @throws java.sql.SQLException when the statement could not be prepared
+	**/
+	public PreparedStatement prepare(CafeQuery query) throws SQLException
+	{
+		PreparedStatement stmt = statements.get(query);
+
+		if (stmt == null || stmt.isClosed())
+		{
+			stmt = connection.prepareStatement(query.getSql());
+			statements.put(query, stmt);
+			parsed.incrementAndGet();
+		}
+		else
+		{
+			stmt.clearParameters();
+			reused.incrementAndGet();
+		}
+		return stmt;
+	}
+
+	/*
+	* Gets the number of statements prepared on this connection
+	* @return parsed count
+	**/
+	public long getParsedCount()
+	{
+		return parsed.get();
+	}
+
+	/*
+	* Gets the number of executions that reused a prepared statement
+	* @return reused count
+	**/
+	public long getReusedCount()
+	{
+		return reused.get();
+	}
+
+	/*
+	* Gets the number of statements Postgres holds as server-side prepared
+	* statements for this connection's session
+	* @return server-side prepared count, -1 if it could not be read
+	**/
+	public int getServerPreparedCount()
+	{
+		try
+		{
+			Statement stmt = connection.createStatement();
+			try
+			{
+				ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM pg_prepared_statements WHERE statement NOT LIKE '%pg_prepared_statements%'");
+				return rs.next() ? rs.getInt(1) : 0;
+			}
+			finally
+			{
+				stmt.close();
+			}
+		}
+		catch (SQLException e)
+		{
+			return -1;
+		}
+	}
+
+	/*
+	* Closes every cached statement
+	**/
+	public void close()
+	{
+		for (PreparedStatement stmt : statements.values())
+		{
+			try
+			{
+				stmt.close();
+			}
+			catch (SQLException e)
+			{
+				// ignored.
+			}
+		}
+		statements.clear();
+	}
+}//end StatementCache
@@ -0,0 +1,21 @@
+/*
+ * Callback for committed table changes
+ * ====================================
+ *
+ * Registered with Cafe.addTableChangeListener and called on the
+ * NotificationListener's thread whenever another process commits a
+ * change to a table with change notifications (see
+ * project/sql/migrations/002_change_notifications.sql). Implementations
+ * must be thread safe and quick; drop or patch a cache, don't query.
+ */
+
+public interface TableChangeListener
+{
+	/*
+	* Handles a committed change
+	* @param table lower case table name, null when any table may have changed
+	*              (i.e. after the listener lost its connection)
+	* @param key key of the changed row, null when any row of table may have changed
+	**/
+	void tableChanged(String table, String key);
+}//end TableChangeListener
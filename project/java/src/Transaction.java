@@ -0,0 +1,19 @@
+/*
+ * Unit of work run by Cafe.executeInTransaction
+ * =============================================
+ *
+ * Every Cafe execute* call made from run() goes to the same connection
+ * and commits or rolls back together with the others.
+ */
+
+import java.sql.SQLException;
+
+public interface Transaction<T>
+{
+	/*
+	* Runs the statements of the transaction
+	* @return result handed back by executeInTransaction
+	* @throws java.sql.SQLException to roll the transaction back
+	**/
+	T run() throws SQLException;
+}//end Transaction
@@ -0,0 +1,139 @@
+/*
+ * Profile of a logged in user
+ * ===========================
+ *
+ * One row of the Users table, loaded once when the user logs in and kept
+ * for the session, so the profile screens need no further Users reads.
+ * The SetUser* helpers update it in place after they write the row. A
+ * change committed by another session of the process (Cafe.userChanged)
+ * or by another process (Cafe.addTableChangeListener) marks it stale;
+ * it is then read again on next use.
+ *
+ * A profile belongs to the session's thread; only the stale flag is
+ * touched from other threads.
+ */
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+public final class UserProfile
+{
+	/*
+	* Maps a row of (login, phoneNum, password, favItems, type).
+	* The char(n) columns are trimmed of their padding.
+	**/
+	public static final RowMapper<UserProfile> MAPPER = new RowMapper<UserProfile>()
+	{
+		public UserProfile mapRow(ResultSet rs) throws SQLException
+		{
+			return new UserProfile(trim(rs.getString(1)), trim(rs.getString(2)), trim(rs.getString(3)), trim(rs.getString(4)), trim(rs.getString(5)));
+		}
+	};
+
+	private final String login;
+	private String phoneNum;
+	private String password;
+	private String favItems;
+	private String type;
+
+	private volatile boolean stale = false;
+
+	public UserProfile(String login, String phoneNum, String password, String favItems, String type)
+	{
+		this.login = login;
+		this.phoneNum = phoneNum;
+		this.password = password;
+		this.favItems = favItems;
+		this.type = type;
+	}
+
+	public String getLogin()
+	{
+		return login;
+	}
+
+	public String getPhoneNum()
+	{
+		return phoneNum;
+	}
+
+	public void setPhoneNum(String phoneNum)
+	{
+		this.phoneNum = phoneNum;
+	}
+
+	public String getPassword()
+	{
+		return password;
+	}
+
+	public void setPassword(String password)
+	{
+		this.password = password;
+	}
+
+	public String getFavItems()
+	{
+		return favItems;
+	}
+
+	public void setFavItems(String favItems)
+	{
+		this.favItems = favItems;
+	}
+
+	public String getType()
+	{
+		return type;
+	}
+
+	public void setType(String type)
+	{
+		this.type = type;
+	}
+
+	/*
+	* Determines if this is the profile of login. Trailing blanks are
+	* ignored, the same way Postgres compares the char(50) login column.
+	**/
+	public boolean isFor(String login)
+	{
+		return login != null && this.login.equals(login.stripTrailing());
+	}
+
+	public boolean isStale()
+	{
+		return stale;
+	}
+
+	public void markStale()
+	{
+		stale = true;
+	}
+
+	/*
+	* Clears the stale flag, before the row is read again, so a change
+	* committed while reading marks it stale once more
+	**/
+	public void markFresh()
+	{
+		stale = false;
+	}
+
+	/*
+	* Takes the values of a freshly read copy of the row
+	* @param row the row as it is now in the database
+	**/
+	public void refresh(UserProfile row)
+	{
+		this.phoneNum = row.phoneNum;
+		this.password = row.password;
+		this.favItems = row.favItems;
+		this.type = row.type;
+	}
+
+	private static String trim(String value)
+	{
+		return value == null ? null : value.trim();
+	}
+}//end UserProfile
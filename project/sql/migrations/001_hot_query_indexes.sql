@@ -0,0 +1,31 @@
+-- Indexes for the hot predicates of the named queries in CafeQuery.java.
+-- Orders(orderid) and ItemStatus(orderid, itemName) are already covered
+-- by their primary keys, as are the Users and Menu lookups by key.
+
+-- a customer's order history, newest first:
+-- ORDER_IDS_BY_LOGIN_PAGE, ORDER_LOGIN
+CREATE INDEX IF NOT EXISTS orders_login_orderid_idx
+	ON Orders (login, orderid);
+
+-- a customer's unpaid orders: UNPAID_ORDER_IDS_BY_LOGIN_PAGE
+CREATE INDEX IF NOT EXISTS orders_unpaid_login_orderid_idx
+	ON Orders (login, orderid) WHERE paid = FALSE;
+
+-- the 24 hour window: ORDER_IDS_PAST_24_HOURS_PAGE and the order board.
+-- Covers orderid and paid so the id pages are index-only scans.
+CREATE INDEX IF NOT EXISTS orders_timestamp_idx
+	ON Orders (timeStampRecieved) INCLUDE (orderid, paid);
+
+-- unpaid orders of the 24 hour window: UNPAID_ORDER_IDS_PAST_24_HOURS_PAGE
+-- and the unpaid order board
+CREATE INDEX IF NOT EXISTS orders_unpaid_timestamp_idx
+	ON Orders (timeStampRecieved) INCLUDE (orderid) WHERE paid = FALSE;
+
+-- orders containing an item: ORDER_IDS_WITH_ITEM, ITEM_STATUS_EXISTS_FOR_ITEM,
+-- DELETE_ITEM_STATUSES_BY_ITEM. Also backs the foreign key to Menu.
+CREATE INDEX IF NOT EXISTS itemstatus_itemname_idx
+	ON ItemStatus (itemName) INCLUDE (orderid);
+
+-- browsing the menu by type: MENU_ITEMS_BY_TYPE
+CREATE INDEX IF NOT EXISTS menu_type_idx
+	ON Menu (type);
@@ -0,0 +1,52 @@
+-- Change notifications for the client-side caches: every change to Menu,
+-- Users or Orders sends a NOTIFY on the cafe_changes channel, which the
+-- NotificationListener of each running Cafe process receives.
+--
+-- Payloads are '<table>:<key>' for the row-level Menu and Users triggers
+-- (menu:<itemName>, users:<login>) and just '<table>' for the
+-- statement-level Orders trigger, which would otherwise notify once per
+-- row of a bulk change. Notifications are only delivered on commit, and
+-- identical ones within a transaction are sent once.
+
+CREATE OR REPLACE FUNCTION cafe_notify_row_change() RETURNS trigger AS $$
+DECLARE
+	-- key column of the table, passed as the trigger argument
+	key_column text := TG_ARGV[0];
+	old_key text;
+	new_key text;
+BEGIN
+	IF TG_OP <> 'INSERT' THEN
+		old_key := rtrim(to_jsonb(OLD) ->> key_column);
+		PERFORM pg_notify('cafe_changes', TG_TABLE_NAME || ':' || old_key);
+	END IF;
+	IF TG_OP <> 'DELETE' THEN
+		new_key := rtrim(to_jsonb(NEW) ->> key_column);
+		IF old_key IS DISTINCT FROM new_key THEN
+			PERFORM pg_notify('cafe_changes', TG_TABLE_NAME || ':' || new_key);
+		END IF;
+	END IF;
+	RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION cafe_notify_table_change() RETURNS trigger AS $$
+BEGIN
+	PERFORM pg_notify('cafe_changes', TG_TABLE_NAME);
+	RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS menu_notify_change ON Menu;
+CREATE TRIGGER menu_notify_change
+	AFTER INSERT OR UPDATE OR DELETE ON Menu
+	FOR EACH ROW EXECUTE FUNCTION cafe_notify_row_change('itemname');
+
+DROP TRIGGER IF EXISTS users_notify_change ON Users;
+CREATE TRIGGER users_notify_change
+	AFTER INSERT OR UPDATE OR DELETE ON Users
+	FOR EACH ROW EXECUTE FUNCTION cafe_notify_row_change('login');
+
+DROP TRIGGER IF EXISTS orders_notify_change ON Orders;
+CREATE TRIGGER orders_notify_change
+	AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON Orders
+	FOR EACH STATEMENT EXECUTE FUNCTION cafe_notify_table_change();
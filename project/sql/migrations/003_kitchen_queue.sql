@@ -0,0 +1,22 @@
+-- The kitchen queue of each running Cafe process holds the 'In progress'
+-- ItemStatus lines in memory.
+
+-- loading the queue: KITCHEN_TICKETS. Only the few lines still being
+-- prepared are indexed, not the history of ready ones.
+CREATE INDEX IF NOT EXISTS itemstatus_in_progress_idx
+	ON ItemStatus (orderid) INCLUDE (itemName) WHERE status = 'In progress';
+
+-- Changes to ItemStatus notify 'itemstatus:<orderid>' on cafe_changes
+-- (see 002_change_notifications.sql), so other processes reload the
+-- order's lines. The lines of one order changed in one transaction give
+-- one notification. TRUNCATE notifies just 'itemstatus', which drops the
+-- whole queue.
+DROP TRIGGER IF EXISTS itemstatus_notify_change ON ItemStatus;
+CREATE TRIGGER itemstatus_notify_change
+	AFTER INSERT OR UPDATE OR DELETE ON ItemStatus
+	FOR EACH ROW EXECUTE FUNCTION cafe_notify_row_change('orderid');
+
+DROP TRIGGER IF EXISTS itemstatus_notify_truncate ON ItemStatus;
+CREATE TRIGGER itemstatus_notify_truncate
+	AFTER TRUNCATE ON ItemStatus
+	FOR EACH STATEMENT EXECUTE FUNCTION cafe_notify_table_change();
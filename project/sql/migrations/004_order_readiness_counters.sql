@@ -0,0 +1,68 @@
+-- Every order keeps how many item lines it has (items_total) and how many
+-- of them are 'Ready' (items_ready), so an order is ready when the two
+-- are equal, without reading its ItemStatus lines.
+
+ALTER TABLE Orders ADD COLUMN IF NOT EXISTS items_total integer NOT NULL DEFAULT 0;
+ALTER TABLE Orders ADD COLUMN IF NOT EXISTS items_ready integer NOT NULL DEFAULT 0;
+
+-- Counts every order's lines again. Used to backfill the counters here
+-- and by BulkLoader, which loads ItemStatus with its triggers disabled.
+CREATE OR REPLACE PROCEDURE cafe_recount_order_items() AS $$
+	UPDATE Orders SET items_total = counts.total, items_ready = counts.ready
+	FROM (SELECT o.orderid, count(i.orderid) AS total, count(*) FILTER (WHERE i.status = 'Ready') AS ready
+		FROM Orders AS o LEFT JOIN ItemStatus AS i ON i.orderid = o.orderid GROUP BY o.orderid) AS counts
+	WHERE Orders.orderid = counts.orderid
+		AND (Orders.items_total, Orders.items_ready) IS DISTINCT FROM (counts.total, counts.ready);
+$$ LANGUAGE sql;
+
+CALL cafe_recount_order_items();
+
+-- Adjusts the counters of the orders a line was added to, removed from or
+-- moved between. The increments lock the order's row, so concurrent
+-- changes to the lines of one order cannot lose a count. Changes that
+-- keep the order and whether the line is ready (comments, lastUpdated)
+-- leave Orders alone.
+CREATE OR REPLACE FUNCTION cafe_count_order_items() RETURNS trigger AS $$
+BEGIN
+	IF TG_OP = 'UPDATE' AND OLD.orderid = NEW.orderid THEN
+		IF (OLD.status = 'Ready') IS DISTINCT FROM (NEW.status = 'Ready') THEN
+			UPDATE Orders SET items_ready = items_ready + CASE WHEN NEW.status = 'Ready' THEN 1 ELSE -1 END
+			WHERE orderid = NEW.orderid;
+		END IF;
+		RETURN NULL;
+	END IF;
+	IF TG_OP <> 'INSERT' THEN
+		UPDATE Orders SET items_total = items_total - 1,
+			items_ready = items_ready - CASE WHEN OLD.status = 'Ready' THEN 1 ELSE 0 END
+		WHERE orderid = OLD.orderid;
+	END IF;
+	IF TG_OP <> 'DELETE' THEN
+		UPDATE Orders SET items_total = items_total + 1,
+			items_ready = items_ready + CASE WHEN NEW.status = 'Ready' THEN 1 ELSE 0 END
+		WHERE orderid = NEW.orderid;
+	END IF;
+	RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION cafe_reset_order_items() RETURNS trigger AS $$
+BEGIN
+	UPDATE Orders SET items_total = 0, items_ready = 0 WHERE items_total <> 0;
+	RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS itemstatus_count_order_items ON ItemStatus;
+CREATE TRIGGER itemstatus_count_order_items
+	AFTER INSERT OR UPDATE OF orderid, status OR DELETE ON ItemStatus
+	FOR EACH ROW EXECUTE FUNCTION cafe_count_order_items();
+
+DROP TRIGGER IF EXISTS itemstatus_reset_order_items ON ItemStatus;
+CREATE TRIGGER itemstatus_reset_order_items
+	AFTER TRUNCATE ON ItemStatus
+	FOR EACH STATEMENT EXECUTE FUNCTION cafe_reset_order_items();
+
+-- READY_UNPAID_ORDERS_PAGE: orders waiting to be picked up and paid, a
+-- handful at any time, newest first.
+CREATE INDEX IF NOT EXISTS orders_ready_unpaid_idx
+	ON Orders (orderid) WHERE paid = FALSE AND items_total > 0 AND items_ready = items_total;
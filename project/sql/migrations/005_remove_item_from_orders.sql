@@ -0,0 +1,47 @@
+-- Removing a menu item from every order (CascadeDeleteItemFromMenu) can
+-- delete a large share of ItemStatus. Row by row, the counting trigger of
+-- 004 would update every order a second time after its total, and the
+-- notifying trigger of 003 would send a notification per order.
+-- cafe_remove_item_from_orders instead takes the price off the totals and
+-- adjusts the counters in the same set-based UPDATE that consumes the
+-- DELETE, with both row triggers switched off for that statement, and
+-- sends one 'itemstatus' notification, which makes other processes
+-- reload their kitchen queue.
+
+-- the row triggers of ItemStatus skip the lines of a statement run with
+-- cafe.bulk_item_change on, whose author keeps the counters itself
+DROP TRIGGER IF EXISTS itemstatus_notify_change ON ItemStatus;
+CREATE TRIGGER itemstatus_notify_change
+	AFTER INSERT OR UPDATE OR DELETE ON ItemStatus
+	FOR EACH ROW WHEN (current_setting('cafe.bulk_item_change', true) IS DISTINCT FROM 'on')
+	EXECUTE FUNCTION cafe_notify_row_change('orderid');
+
+DROP TRIGGER IF EXISTS itemstatus_count_order_items ON ItemStatus;
+CREATE TRIGGER itemstatus_count_order_items
+	AFTER INSERT OR UPDATE OF orderid, status OR DELETE ON ItemStatus
+	FOR EACH ROW WHEN (current_setting('cafe.bulk_item_change', true) IS DISTINCT FROM 'on')
+	EXECUTE FUNCTION cafe_count_order_items();
+
+-- Removes an item from every order. Returns the number of orders changed.
+-- bpchar, so the lookup uses itemstatus_itemname_idx.
+CREATE OR REPLACE FUNCTION cafe_remove_item_from_orders(item_name bpchar) RETURNS integer AS $$
+DECLARE
+	orders integer;
+BEGIN
+	PERFORM set_config('cafe.bulk_item_change', 'on', true);
+	WITH removed AS (
+		DELETE FROM ItemStatus WHERE itemName = item_name RETURNING orderid, itemName, status)
+	UPDATE Orders SET total = Orders.total - Menu.price,
+		items_total = Orders.items_total - 1,
+		items_ready = Orders.items_ready - CASE WHEN removed.status = 'Ready' THEN 1 ELSE 0 END
+	FROM removed JOIN Menu ON Menu.itemName = removed.itemName
+	WHERE Orders.orderid = removed.orderid;
+	GET DIAGNOSTICS orders = ROW_COUNT;
+	PERFORM set_config('cafe.bulk_item_change', 'off', true);
+
+	IF orders > 0 THEN
+		PERFORM pg_notify('cafe_changes', 'itemstatus');
+	END IF;
+	RETURN orders;
+END;
+$$ LANGUAGE plpgsql;
@@ -1,5 +1,8 @@
 #!/bin/bash
 DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
-psql -h 127.0.0.1 mydb < $DIR/../src/create_tables.sql
-psql -h 127.0.0.1 mydb < $DIR/../src/create_indexes.sql
-psql -h 127.0.0.1 mydb < $DIR/../src/load_data.sql
+psql -h 127.0.0.1 -f $DIR/../src/create_tables.sql mydb
+bash $DIR/../../java/scripts/load_data.sh
+#build the indexes and triggers of project/sql/migrations once over the
+#loaded rows, and record them in schema_version so migrate.sh does not
+#apply them again
+bash $DIR/../../java/scripts/migrate.sh
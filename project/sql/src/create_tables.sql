@@ -2,6 +2,7 @@ DROP TABLE Users CASCADE;
 DROP TABLE Orders CASCADE;
 DROP TABLE Menu CASCADE;
 DROP TABLE ItemStatus;
+DROP TABLE IF EXISTS schema_version;
 
 CREATE TABLE Users(
 	login char(50) UNIQUE NOT NULL, 